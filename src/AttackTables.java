@@ -0,0 +1,216 @@
+// Attack sets for every piece on every square, built once when the class is loaded. Squares are numbered
+// (row * Board.MAX_COLUMNS + column) as on the board, and each set is a bitboard of the squares the piece attacks.
+// Sliding pieces are looked up through magic bitboards: the blockers on a piece's rays are multiplied by a magic number
+// chosen for that square so that every blocker arrangement hashes to a slot holding the matching attack set.
+final class AttackTables {
+    private static final int SQUARE_COUNT = Board.MAX_ROWS * Board.MAX_COLUMNS;
+
+    private static final int[][] KNIGHT_OFFSETS = {{-1, -2}, {-1, 2}, {-2, -1}, {-2, 1},
+            {1, -2}, {1, 2}, {2, -1}, {2, 1}};
+    private static final int[][] KING_OFFSETS = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+    private static final int[][] ORTHOGONAL_DIRECTIONS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+    private static final int[][] DIAGONAL_DIRECTIONS = {{-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
+
+    private static final long[] KNIGHT_ATTACKS = new long[SQUARE_COUNT];
+    private static final long[] KING_ATTACKS = new long[SQUARE_COUNT];
+    // Indexed by Piece.Color ordinal. White pawns attack towards row 0 and black pawns towards the last row.
+    private static final long[][] PAWN_ATTACKS = new long[Piece.Color.values().length][SQUARE_COUNT];
+
+    private static final long[] ROOK_MASKS = new long[SQUARE_COUNT];
+    private static final long[] ROOK_MAGICS = new long[SQUARE_COUNT];
+    private static final int[] ROOK_SHIFTS = new int[SQUARE_COUNT];
+    private static final long[][] ROOK_ATTACKS = new long[SQUARE_COUNT][];
+    private static final long[] BISHOP_MASKS = new long[SQUARE_COUNT];
+    private static final long[] BISHOP_MAGICS = new long[SQUARE_COUNT];
+    private static final int[] BISHOP_SHIFTS = new int[SQUARE_COUNT];
+    private static final long[][] BISHOP_ATTACKS = new long[SQUARE_COUNT][];
+
+    // For two squares on a shared row, column or diagonal: the squares strictly between them, and the whole line
+    // through both of them from edge to edge. Both are empty for squares that do not share a line.
+    private static final long[][] SQUARES_BETWEEN = new long[SQUARE_COUNT][SQUARE_COUNT];
+    private static final long[][] LINES = new long[SQUARE_COUNT][SQUARE_COUNT];
+
+    // A fixed seed keeps the magic numbers, and so the table layout, identical on every run
+    private static long randomState = 0x9E3779B97F4A7C15L;
+
+    static {
+        for (int square = 0; square < SQUARE_COUNT; square++) {
+            KNIGHT_ATTACKS[square] = getStepAttacks(square, KNIGHT_OFFSETS);
+            KING_ATTACKS[square] = getStepAttacks(square, KING_OFFSETS);
+            PAWN_ATTACKS[Piece.Color.WHITE.ordinal()][square] = getStepAttacks(square, new int[][]{{-1, -1}, {-1, 1}});
+            PAWN_ATTACKS[Piece.Color.BLACK.ordinal()][square] = getStepAttacks(square, new int[][]{{1, -1}, {1, 1}});
+
+            initializeMagic(square, ORTHOGONAL_DIRECTIONS, ROOK_MASKS, ROOK_MAGICS, ROOK_SHIFTS, ROOK_ATTACKS);
+            initializeMagic(square, DIAGONAL_DIRECTIONS, BISHOP_MASKS, BISHOP_MAGICS, BISHOP_SHIFTS, BISHOP_ATTACKS);
+            initializeLines(square, ORTHOGONAL_DIRECTIONS);
+            initializeLines(square, DIAGONAL_DIRECTIONS);
+        }
+    }
+
+    private AttackTables() {
+    }
+
+    static long getKnightAttacks(int square) {
+        return KNIGHT_ATTACKS[square];
+    }
+
+    static long getKingAttacks(int square) {
+        return KING_ATTACKS[square];
+    }
+
+    static long getPawnAttacks(Piece.Color color, int square) {
+        return PAWN_ATTACKS[color.ordinal()][square];
+    }
+
+    static long getRookAttacks(int square, long occupiedSquares) {
+        int index = (int) (((occupiedSquares & ROOK_MASKS[square]) * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square]);
+        return ROOK_ATTACKS[square][index];
+    }
+
+    static long getBishopAttacks(int square, long occupiedSquares) {
+        int index = (int) (((occupiedSquares & BISHOP_MASKS[square]) * BISHOP_MAGICS[square]) >>>
+                BISHOP_SHIFTS[square]);
+        return BISHOP_ATTACKS[square][index];
+    }
+
+    static long getQueenAttacks(int square, long occupiedSquares) {
+        return getRookAttacks(square, occupiedSquares) | getBishopAttacks(square, occupiedSquares);
+    }
+
+    static long getSquaresBetween(int square, int otherSquare) {
+        return SQUARES_BETWEEN[square][otherSquare];
+    }
+
+    static long getLine(int square, int otherSquare) {
+        return LINES[square][otherSquare];
+    }
+
+    private static void initializeLines(int square, int[][] directions) {
+        int row = square / Board.MAX_COLUMNS;
+        int column = square % Board.MAX_COLUMNS;
+        for (int[] direction : directions) {
+            long line = getSlidingAttacks(square, new int[][]{direction, {-direction[0], -direction[1]}}, 0L) |
+                    (1L << square);
+            long squaresBetween = 0L;
+            int targetRow = row + direction[0];
+            int targetColumn = column + direction[1];
+            while (targetRow >= 0 && targetRow < Board.MAX_ROWS && targetColumn >= 0 &&
+                    targetColumn < Board.MAX_COLUMNS) {
+                int targetSquare = Board.getSquareIndex(targetRow, targetColumn);
+                SQUARES_BETWEEN[square][targetSquare] = squaresBetween;
+                LINES[square][targetSquare] = line;
+                squaresBetween |= 1L << targetSquare;
+                targetRow += direction[0];
+                targetColumn += direction[1];
+            }
+        }
+    }
+
+    private static long getStepAttacks(int square, int[][] offsets) {
+        int row = square / Board.MAX_COLUMNS;
+        int column = square % Board.MAX_COLUMNS;
+        long attacks = 0L;
+        for (int[] offset : offsets) {
+            int targetRow = row + offset[0];
+            int targetColumn = column + offset[1];
+            if (targetRow >= 0 && targetRow < Board.MAX_ROWS && targetColumn >= 0 && targetColumn < Board.MAX_COLUMNS) {
+                attacks |= Board.getSquareBit(targetRow, targetColumn);
+            }
+        }
+        return attacks;
+    }
+
+    // Walks each ray until it leaves the board or reaches an occupied square, which is included in the attacks
+    private static long getSlidingAttacks(int square, int[][] directions, long occupiedSquares) {
+        int row = square / Board.MAX_COLUMNS;
+        int column = square % Board.MAX_COLUMNS;
+        long attacks = 0L;
+        for (int[] direction : directions) {
+            int targetRow = row + direction[0];
+            int targetColumn = column + direction[1];
+            while (targetRow >= 0 && targetRow < Board.MAX_ROWS && targetColumn >= 0 &&
+                    targetColumn < Board.MAX_COLUMNS) {
+                long targetBit = Board.getSquareBit(targetRow, targetColumn);
+                attacks |= targetBit;
+                if ((occupiedSquares & targetBit) != 0) {
+                    break;
+                }
+                targetRow += direction[0];
+                targetColumn += direction[1];
+            }
+        }
+        return attacks;
+    }
+
+    // The squares whose occupancy can change the attack set, which excludes the last square of each ray since a piece
+    // there is attacked whether or not it blocks anything
+    private static long getRelevantBlockerMask(int square, int[][] directions) {
+        int row = square / Board.MAX_COLUMNS;
+        int column = square % Board.MAX_COLUMNS;
+        long mask = 0L;
+        for (int[] direction : directions) {
+            int targetRow = row + direction[0];
+            int targetColumn = column + direction[1];
+            while (targetRow + direction[0] >= 0 && targetRow + direction[0] < Board.MAX_ROWS &&
+                    targetColumn + direction[1] >= 0 && targetColumn + direction[1] < Board.MAX_COLUMNS) {
+                mask |= Board.getSquareBit(targetRow, targetColumn);
+                targetRow += direction[0];
+                targetColumn += direction[1];
+            }
+        }
+        return mask;
+    }
+
+    private static void initializeMagic(int square, int[][] directions, long[] masks, long[] magics, int[] shifts,
+                                        long[][] attackTables) {
+        long mask = getRelevantBlockerMask(square, directions);
+        int relevantBitCount = Long.bitCount(mask);
+        int subsetCount = 1 << relevantBitCount;
+        long[] blockerSubsets = new long[subsetCount];
+        long[] subsetAttacks = new long[subsetCount];
+
+        // Enumerates every subset of the mask using the carry-rippler trick
+        long subset = 0L;
+        for (int i = 0; i < subsetCount; i++) {
+            blockerSubsets[i] = subset;
+            subsetAttacks[i] = getSlidingAttacks(square, directions, subset);
+            subset = (subset - mask) & mask;
+        }
+
+        int shift = Long.SIZE - relevantBitCount;
+        long[] attackTable = new long[subsetCount];
+        int[] slotVersion = new int[subsetCount];
+        int version = 0;
+        while (true) {
+            long magic = nextRandomLong() & nextRandomLong() & nextRandomLong();
+            if (Long.bitCount((mask * magic) >>> (Long.SIZE - Board.MAX_COLUMNS)) < 6) {
+                continue;
+            }
+            version++;
+            boolean hasCollision = false;
+            for (int i = 0; i < subsetCount && !hasCollision; i++) {
+                int index = (int) ((blockerSubsets[i] * magic) >>> shift);
+                if (slotVersion[index] != version) {
+                    slotVersion[index] = version;
+                    attackTable[index] = subsetAttacks[i];
+                } else if (attackTable[index] != subsetAttacks[i]) {
+                    hasCollision = true;
+                }
+            }
+            if (!hasCollision) {
+                masks[square] = mask;
+                magics[square] = magic;
+                shifts[square] = shift;
+                attackTables[square] = attackTable;
+                return;
+            }
+        }
+    }
+
+    private static long nextRandomLong() {
+        randomState ^= randomState >>> 12;
+        randomState ^= randomState << 25;
+        randomState ^= randomState >>> 27;
+        return randomState * 0x2545F4914F6CDD1DL;
+    }
+}
@@ -1,149 +1,546 @@
 import java.util.*;
 
-//promotion, 3peat, 50, ai, record
-
-
+// A Board must be confined to one thread. Even the methods that only ask about the position write to it: moves are
+// made and unmade in place to test legality and to detect checkmate and stalemate, the terminal state is cached, and
+// the static exchange evaluation works in a scratch array. Code that searches on several threads gives each thread
+// its own copy, made with copyBoard as Search does.
 class Board {
     static final int MAX_ROWS = 8;
     static final int MAX_COLUMNS = 8;
 
+    static final int NO_SQUARE = -1;
+    static final int FIFTY_MOVE_RULE_PLIES = 100;
+    static final String START_POSITION_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // Castling rights are implied by unmoved kings and rooks, and are summarised in these bits for hashing
+    static final int WHITE_CASTLE_RIGHT = 1;
+    static final int WHITE_CASTLE_LEFT = 2;
+    static final int BLACK_CASTLE_RIGHT = 4;
+    static final int BLACK_CASTLE_LEFT = 8;
+
+    private static final Piece.Color[] COLORS = Piece.Color.values();
+    private static final Piece.PieceType[] PIECE_TYPES = Piece.PieceType.values();
+
+    // Each undo record is packed into a single long, holding the move itself in the low 32 bits, so that making and
+    // unmaking moves never allocates
+    private static final int UNDO_MOVING_PIECE_SHIFT = 32;
+    private static final int UNDO_CAPTURED_PIECE_SHIFT = 36;
+    private static final int UNDO_EN_PASSANT_SQUARE_SHIFT = 40;
+    private static final int UNDO_HALFMOVE_CLOCK_SHIFT = 47;
+    private static final long MOVE_MASK = 0xFFFFFFFFL;
+    private static final long PIECE_TYPE_MASK = 0xFL;
+    private static final long EN_PASSANT_SQUARE_MASK = 0x7FL;
+    private static final long HALFMOVE_CLOCK_MASK = 0xFFFFL;
+
+    private static final int TERMINAL_STATE_UNKNOWN = 0;
+    static final int TERMINAL_STATE_ONGOING = 1;
+    static final int TERMINAL_STATE_CHECKMATE = 2;
+    static final int TERMINAL_STATE_STALEMATE = 3;
+
+    // Static exchange evaluation recaptures with the least valuable attacker first. No exchange on one square can have
+    // more captures than there are pieces.
+    private static final Piece.PieceType[] EXCHANGE_ATTACKER_ORDER = {Piece.PieceType.PAWN, Piece.PieceType.KNIGHT,
+            Piece.PieceType.BISHOP, Piece.PieceType.ROOK, Piece.PieceType.QUEEN, Piece.PieceType.KING};
+    private static final int MAX_EXCHANGE_CAPTURES = 32;
+
     private Piece.Color turnPlayerColor;
     private int[] whiteKingPosition;
     private int[] blackKingPosition;
-    private Piece[][] boardLayout;
-    private Board previousBoard;
-    private boolean pawnMovedOrPieceTaken;
+    // One occupancy word per color and piece type. Square (row, column) is bit (row * MAX_COLUMNS + column), so the
+    // top-left square of the printed board is bit 0.
+    private long[] pieceBitboards;
+    private long[] colorBitboards;
+    private long occupiedSquares;
+    private int enPassantTargetSquare;
+    // The number of plies since a pawn last moved or a piece was last taken
+    private int halfmoveClock;
+    // Starts at 1 and goes up after each of black's moves, as in FEN
+    private int fullmoveNumber;
+    private long zobristKey;
+    // Running evaluation totals, kept up to date as pieces are placed and removed. See Evaluation.
+    private int middlegameScore;
+    private int endgameScore;
+    private int gamePhase;
+    private long[] undoStack;
+    private int undoStackSize;
+    // The keys of the positions before each move, oldest first. Unmaking a move restores the key from here, and only
+    // positions since the last irreversible move are ever needed to detect repetitions.
+    private long[] zobristKeyHistory;
+    private int zobristKeyHistorySize;
+    // Whether the position is checkmate, stalemate or neither, for the position with terminalStateZobristKey. Game
+    // loops ask several times per turn, and this way the moves are only searched once per position.
+    private int terminalState;
+    private long terminalStateZobristKey;
+    private StagedMoveGenerator terminalStateMoveGenerator;
+    private final int[] exchangeGains = new int[MAX_EXCHANGE_CAPTURES];
 
     Board() {
         turnPlayerColor = Piece.Color.WHITE;
         whiteKingPosition = new int[]{7, 4};
         blackKingPosition = new int[]{0, 4};
-        boardLayout = new Piece[MAX_ROWS][MAX_COLUMNS];
-        previousBoard = null;
+        pieceBitboards = new long[COLORS.length * PIECE_TYPES.length];
+        colorBitboards = new long[COLORS.length];
+        enPassantTargetSquare = NO_SQUARE;
+        fullmoveNumber = 1;
+        undoStack = new long[0];
+        zobristKeyHistory = new long[0];
     }
 
     private Board(Piece.Color turnPlayerColor, int[] whiteKingPosition, int[] blackKingPosition,
-                  Board previousBoard) {
+                  Board sourceBoard) {
         this.turnPlayerColor = turnPlayerColor;
-        this.whiteKingPosition = whiteKingPosition;
-        this.blackKingPosition = blackKingPosition;
-        this.previousBoard = previousBoard;
-        boardLayout = new Piece[MAX_ROWS][MAX_COLUMNS];
+        this.whiteKingPosition = whiteKingPosition.clone();
+        this.blackKingPosition = blackKingPosition.clone();
+        pieceBitboards = sourceBoard.pieceBitboards.clone();
+        colorBitboards = sourceBoard.colorBitboards.clone();
+        occupiedSquares = sourceBoard.occupiedSquares;
+        enPassantTargetSquare = sourceBoard.enPassantTargetSquare;
+        halfmoveClock = sourceBoard.halfmoveClock;
+        fullmoveNumber = sourceBoard.fullmoveNumber;
+        zobristKey = sourceBoard.zobristKey;
+        middlegameScore = sourceBoard.middlegameScore;
+        endgameScore = sourceBoard.endgameScore;
+        gamePhase = sourceBoard.gamePhase;
+        // A copy only keeps the keys a repetition could still match, and the moves that led to them, so the history a
+        // board carries is bounded by the fifty-move window rather than growing with the whole game
+        zobristKeyHistorySize = Math.min(sourceBoard.zobristKeyHistorySize, sourceBoard.halfmoveClock);
+        zobristKeyHistory = Arrays.copyOfRange(sourceBoard.zobristKeyHistory,
+                sourceBoard.zobristKeyHistorySize - zobristKeyHistorySize, sourceBoard.zobristKeyHistorySize);
+        undoStackSize = Math.min(sourceBoard.undoStackSize, zobristKeyHistorySize);
+        undoStack = Arrays.copyOfRange(sourceBoard.undoStack, sourceBoard.undoStackSize - undoStackSize,
+                sourceBoard.undoStackSize);
     }
 
-    private Map<int[], List<int[]>> getAllPiecesPossibleMoves() {
-        Map<int[], List<int[]>> mapOfPieceMoves = new HashMap<>();
+    static int getSquareIndex(int row, int column) {
+        return row * MAX_COLUMNS + column;
+    }
 
-        for (int i = 0; i < MAX_ROWS; i++) {
-            for (int j = 0; j < MAX_COLUMNS; j++) {
-                if (boardLayout[i][j] != null && boardLayout[i][j].getColor() == turnPlayerColor) {
-                    Piece currentPiece = boardLayout[i][j];
-                    List<int[]> possibleMoves = currentPiece.getPieceType().getPossibleMoves(i, j, this, false);
-                    mapOfPieceMoves.put(new int[]{i, j}, possibleMoves);
-                }
-            }
+    static long getSquareBit(int row, int column) {
+        return 1L << getSquareIndex(row, column);
+    }
+
+    private static int getBitboardIndex(Piece.Color color, Piece.PieceType pieceType) {
+        return color.ordinal() * PIECE_TYPES.length + pieceType.ordinal();
+    }
+
+    long getColorBitboard(Piece.Color color) {
+        return colorBitboards[color.ordinal()];
+    }
+
+    long getOccupiedSquares() {
+        return occupiedSquares;
+    }
+
+    // Unmoved pawns, rooks and kings are included with their moved counterparts
+    long getPieceBitboard(Piece.Color color, Piece.PieceType pieceType) {
+        long pieces = pieceBitboards[getBitboardIndex(color, pieceType)];
+        if (pieceType == Piece.PieceType.PAWN) {
+            pieces |= pieceBitboards[getBitboardIndex(color, Piece.PieceType.PAWN_UNMOVED)];
+        } else if (pieceType == Piece.PieceType.ROOK) {
+            pieces |= pieceBitboards[getBitboardIndex(color, Piece.PieceType.ROOK_UNMOVED)];
+        } else if (pieceType == Piece.PieceType.KING) {
+            pieces |= pieceBitboards[getBitboardIndex(color, Piece.PieceType.KING_UNMOVED)];
         }
-        return mapOfPieceMoves;
+        return pieces;
     }
 
-    private Map<int[], List<Board>> getAllPossibleBoardStates() {
-        Map<int[], List<Board>> mapOfBoardStates = new HashMap<>();
+    boolean isSquareEmpty(int row, int column) {
+        return (occupiedSquares & getSquareBit(row, column)) == 0;
+    }
 
-        for (int i = 0; i < MAX_ROWS; i++) {
-            for (int j = 0; j < MAX_COLUMNS; j++) {
-                if (boardLayout[i][j] != null && boardLayout[i][j].getColor() == turnPlayerColor) {
-                    int[] piecePosition = new int[]{i, j};
-                    List<Board> possibleBoards = new ArrayList<>();
-                    Piece currentPiece = boardLayout[i][j];
-
-                    List<int[]> possibleMoves = currentPiece.getPieceType().getPossibleMoves(i, j, this, false);
-                    for (int[] move : possibleMoves) {
-                        possibleBoards.add(movePieceOnNewBoard(i, j, move[0], move[1], turnPlayerColor));
-                    }
-                    mapOfBoardStates.put(piecePosition, possibleBoards);
-                }
+    boolean isSquareOccupiedByColor(int row, int column, Piece.Color color) {
+        return (colorBitboards[color.ordinal()] & getSquareBit(row, column)) != 0;
+    }
+
+    Piece.Color getPieceColorAt(int row, int column) {
+        long squareBit = getSquareBit(row, column);
+        for (Piece.Color color : COLORS) {
+            if ((colorBitboards[color.ordinal()] & squareBit) != 0) {
+                return color;
             }
         }
-        return mapOfBoardStates;
+        return null;
     }
 
-    private Map<int[], List<int[]>> getAllPiecesLegalMoves() {
-        Map<int[], List<int[]>> mapOfPieceMoves = getAllPiecesPossibleMoves();
-        Map<int[], List<int[]>> mapOfLegalMoves = new HashMap<>();
-
-        for (Map.Entry<int[], List<int[]>> entry : mapOfPieceMoves.entrySet()) {
-            int currentRowOfPiece = entry.getKey()[0];
-            int currentColumnOfPiece = entry.getKey()[1];
+    Piece.PieceType getPieceTypeAt(int row, int column) {
+        Piece.Color color = getPieceColorAt(row, column);
+        if (color == null) {
+            return null;
+        }
+        long squareBit = getSquareBit(row, column);
+        for (Piece.PieceType pieceType : PIECE_TYPES) {
+            if ((pieceBitboards[getBitboardIndex(color, pieceType)] & squareBit) != 0) {
+                return pieceType;
+            }
+        }
+        return null;
+    }
 
-            List<int[]> possibleMovesWithoutCheck = new ArrayList<>();
-            List<int[]> possibleMoves = entry.getValue();
+    private void placePiece(int row, int column, Piece.Color color, Piece.PieceType pieceType) {
+        long squareBit = getSquareBit(row, column);
+        pieceBitboards[getBitboardIndex(color, pieceType)] |= squareBit;
+        colorBitboards[color.ordinal()] |= squareBit;
+        occupiedSquares |= squareBit;
+        int square = getSquareIndex(row, column);
+        zobristKey ^= Zobrist.getPieceKey(color, pieceType, square);
+        middlegameScore += Evaluation.getMiddlegameValue(color, pieceType, square);
+        endgameScore += Evaluation.getEndgameValue(color, pieceType, square);
+        gamePhase += Evaluation.getGamePhaseWeight(pieceType);
+    }
 
-            for (int[] currentMove : possibleMoves) {
-                int targetRow = currentMove[0];
-                int targetColumn = currentMove[1];
+    private void removePiece(int row, int column) {
+        Piece.Color color = getPieceColorAt(row, column);
+        if (color == null) {
+            return;
+        }
+        Piece.PieceType pieceType = getPieceTypeAt(row, column);
+        long squareBit = getSquareBit(row, column);
+        pieceBitboards[getBitboardIndex(color, pieceType)] &= ~squareBit;
+        colorBitboards[color.ordinal()] &= ~squareBit;
+        occupiedSquares &= ~squareBit;
+        int square = getSquareIndex(row, column);
+        zobristKey ^= Zobrist.getPieceKey(color, pieceType, square);
+        middlegameScore -= Evaluation.getMiddlegameValue(color, pieceType, square);
+        endgameScore -= Evaluation.getEndgameValue(color, pieceType, square);
+        gamePhase -= Evaluation.getGamePhaseWeight(pieceType);
+    }
 
-                Board newBoard = movePieceOnNewBoard(currentRowOfPiece, currentColumnOfPiece, targetRow, targetColumn,
-                        turnPlayerColor);
-                if (!newBoard.isKingInCheck()) {
-                    possibleMovesWithoutCheck.add(currentMove);
-                }
+    int getCastlingRights() {
+        int castlingRights = 0;
+        long whiteKingBackRow = pieceBitboards[getBitboardIndex(Piece.Color.WHITE, Piece.PieceType.KING_UNMOVED)] &
+                getSquareBit(MAX_ROWS - 1, 4);
+        long blackKingBackRow = pieceBitboards[getBitboardIndex(Piece.Color.BLACK, Piece.PieceType.KING_UNMOVED)] &
+                getSquareBit(0, 4);
+        long whiteUnmovedRooks = pieceBitboards[getBitboardIndex(Piece.Color.WHITE, Piece.PieceType.ROOK_UNMOVED)];
+        long blackUnmovedRooks = pieceBitboards[getBitboardIndex(Piece.Color.BLACK, Piece.PieceType.ROOK_UNMOVED)];
+
+        if (whiteKingBackRow != 0) {
+            if ((whiteUnmovedRooks & getSquareBit(MAX_ROWS - 1, MAX_COLUMNS - 1)) != 0) {
+                castlingRights |= WHITE_CASTLE_RIGHT;
+            }
+            if ((whiteUnmovedRooks & getSquareBit(MAX_ROWS - 1, 0)) != 0) {
+                castlingRights |= WHITE_CASTLE_LEFT;
+            }
+        }
+        if (blackKingBackRow != 0) {
+            if ((blackUnmovedRooks & getSquareBit(0, MAX_COLUMNS - 1)) != 0) {
+                castlingRights |= BLACK_CASTLE_RIGHT;
             }
-            if (!possibleMovesWithoutCheck.isEmpty()) {
-                mapOfLegalMoves.put(new int[]{currentRowOfPiece, currentColumnOfPiece}, possibleMovesWithoutCheck);
+            if ((blackUnmovedRooks & getSquareBit(0, 0)) != 0) {
+                castlingRights |= BLACK_CASTLE_LEFT;
             }
         }
-        return mapOfLegalMoves;
+        return castlingRights;
     }
 
-    List<int[]> getPieceLegalMoves(int row, int column) {
-        List<int[]> possibleMoves = boardLayout[row][column].getPieceType().getPossibleMoves(row, column, this, false);
-        List<int[]> listOfLegalMoves = new ArrayList<>();
+    // The en passant square only distinguishes positions when the turn player has a pawn that could capture onto it
+    boolean isEnPassantSquareHashed() {
+        return enPassantTargetSquare != NO_SQUARE &&
+                (AttackTables.getPawnAttacks(getOppositeTurnPlayerColor(), enPassantTargetSquare) &
+                        getPieceBitboard(turnPlayerColor, Piece.PieceType.PAWN)) != 0;
+    }
+
+    private long computeZobristKey() {
+        long key = 0L;
+        long remainingPieces = occupiedSquares;
+        while (remainingPieces != 0) {
+            int square = Long.numberOfTrailingZeros(remainingPieces);
+            remainingPieces &= remainingPieces - 1;
+            int row = square / MAX_COLUMNS;
+            int column = square % MAX_COLUMNS;
+            key ^= Zobrist.getPieceKey(getPieceColorAt(row, column), getPieceTypeAt(row, column), square);
+        }
+        key ^= Zobrist.getCastlingRightsKey(getCastlingRights());
+        if (isEnPassantSquareHashed()) {
+            key ^= Zobrist.getEnPassantKey(enPassantTargetSquare);
+        }
+        if (turnPlayerColor == Piece.Color.BLACK) {
+            key ^= Zobrist.getBlackToMoveKey();
+        }
+        return key;
+    }
 
-        for (int[] currentMove : possibleMoves) {
-            int targetRow = currentMove[0];
-            int targetColumn = currentMove[1];
+    long getZobristKey() {
+        return zobristKey;
+    }
 
-            Board newBoard = movePieceOnNewBoard(row, column, targetRow, targetColumn, turnPlayerColor);
-            if (!newBoard.isKingInCheck()) {
-                listOfLegalMoves.add(currentMove);
+    // Counts earlier occurrences of the current position. Only positions with the same player to move since the last
+    // pawn move or capture can match, so the scan stops there rather than walking the whole game.
+    int getRepetitionCount() {
+        int repetitionCount = 0;
+        int earliestIndex = Math.max(0, zobristKeyHistorySize - halfmoveClock);
+        for (int i = zobristKeyHistorySize - 2; i >= earliestIndex; i -= 2) {
+            if (zobristKeyHistory[i] == zobristKey) {
+                repetitionCount++;
             }
         }
-        return listOfLegalMoves;
+        return repetitionCount;
+    }
+
+    boolean isThreefoldRepetition() {
+        return getRepetitionCount() >= 2;
+    }
+
+    boolean isFiftyMoveRuleDraw() {
+        return halfmoveClock >= FIFTY_MOVE_RULE_PLIES;
+    }
+
+    // The exact result from the loaded endgame tablebases, as a Tablebases probe result
+    int probeTablebase() {
+        return Tablebases.probe(this);
+    }
+
+    // From the point of view of the turn player, in centipawns
+    int evaluate() {
+        return Evaluation.evaluate(this);
+    }
+
+    // White's score minus black's, for material and piece squares only
+    int getMiddlegameScore() {
+        return middlegameScore;
+    }
+
+    int getEndgameScore() {
+        return endgameScore;
+    }
+
+    int getGamePhase() {
+        return gamePhase;
+    }
+
+    int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    // Fills moveBuffer with every move the turn player's pieces could make if leaving the king in check were allowed,
+    // and returns how many moves were written
+    int getAllPiecesPossibleMoves(int[] moveBuffer) {
+        int moveCount = 0;
+        long turnPlayerPieces = colorBitboards[turnPlayerColor.ordinal()];
+        while (turnPlayerPieces != 0) {
+            int square = Long.numberOfTrailingZeros(turnPlayerPieces);
+            turnPlayerPieces &= turnPlayerPieces - 1;
+            int i = square / MAX_COLUMNS;
+            int j = square % MAX_COLUMNS;
+
+            moveCount = getPieceTypeAt(i, j).getPossibleMoves(i, j, this, moveBuffer, moveCount);
+        }
+        return moveCount;
     }
 
-    Map<int[], List<Board>> getAllLegalBoardStates() {
-        Map<int[], List<Board>> mapOfBoardStates = getAllPossibleBoardStates();
+    // Rather than making each move to see whether it leaves the king in check, the pieces giving check and the pieces
+    // pinned to the king are found once, and each move is then checked against them with a few bit operations
+    int getAllPiecesLegalMoves(int[] moveBuffer) {
+        int kingSquare = getTurnPlayerKingSquare();
+        long checkingPieces = getSquareAttackers(kingSquare, getOppositeTurnPlayerColor(), occupiedSquares);
+        int moveCount = addPieceLegalMoves(kingSquare, kingSquare, 0L, 0L, false, moveBuffer, 0);
+        // Only the king can answer a check from two pieces at once
+        if (Long.bitCount(checkingPieces) > 1) {
+            return moveCount;
+        }
 
-        for (List<Board> currentBoardList : mapOfBoardStates.values()) {
-            currentBoardList.removeIf(Board::isKingInCheck);
+        long checkEvasionSquares = getCheckEvasionSquares(kingSquare, checkingPieces);
+        long pinnedPieces = getPinnedPieces(kingSquare);
+        long turnPlayerPieces = colorBitboards[turnPlayerColor.ordinal()] & ~(1L << kingSquare);
+        while (turnPlayerPieces != 0) {
+            int square = Long.numberOfTrailingZeros(turnPlayerPieces);
+            turnPlayerPieces &= turnPlayerPieces - 1;
+            moveCount = addPieceLegalMoves(square, kingSquare, checkEvasionSquares, pinnedPieces, false, moveBuffer,
+                    moveCount);
         }
-        return mapOfBoardStates;
+        return moveCount;
     }
 
-    private boolean areThereNoLegalMoves() {
-        Map<int[], List<int[]>> mapOfPieceMoves = getAllPiecesPossibleMoves();
+    // As getAllPiecesLegalMoves, but only the captures and promotions, generated without the quiet moves at all
+    int getAllPiecesLegalCaptures(int[] moveBuffer) {
+        int kingSquare = getTurnPlayerKingSquare();
+        long checkingPieces = getSquareAttackers(kingSquare, getOppositeTurnPlayerColor(), occupiedSquares);
+        int moveCount = addPieceLegalMoves(kingSquare, kingSquare, 0L, 0L, true, moveBuffer, 0);
+        if (Long.bitCount(checkingPieces) > 1) {
+            return moveCount;
+        }
 
-        for (Map.Entry<int[], List<int[]>> entry : mapOfPieceMoves.entrySet()) {
-            int currentRowOfPiece = entry.getKey()[0];
-            int currentColumnOfPiece = entry.getKey()[1];
+        long checkEvasionSquares = getCheckEvasionSquares(kingSquare, checkingPieces);
+        long pinnedPieces = getPinnedPieces(kingSquare);
+        long turnPlayerPieces = colorBitboards[turnPlayerColor.ordinal()] & ~(1L << kingSquare);
+        while (turnPlayerPieces != 0) {
+            int square = Long.numberOfTrailingZeros(turnPlayerPieces);
+            turnPlayerPieces &= turnPlayerPieces - 1;
+            moveCount = addPieceLegalMoves(square, kingSquare, checkEvasionSquares, pinnedPieces, true, moveBuffer,
+                    moveCount);
+        }
+        return moveCount;
+    }
 
-            List<int[]> possibleMoves = entry.getValue();
+    int getPieceLegalMoves(int row, int column, int[] moveBuffer) {
+        int kingSquare = getTurnPlayerKingSquare();
+        int square = getSquareIndex(row, column);
+        long checkingPieces = getSquareAttackers(kingSquare, getOppositeTurnPlayerColor(), occupiedSquares);
+        if (square != kingSquare && Long.bitCount(checkingPieces) > 1) {
+            return 0;
+        }
+        return addPieceLegalMoves(square, kingSquare, getCheckEvasionSquares(kingSquare, checkingPieces),
+                getPinnedPieces(kingSquare), false, moveBuffer, 0);
+    }
 
-            for (int[] currentMove : possibleMoves) {
-                int targetRow = currentMove[0];
-                int targetColumn = currentMove[1];
+    // Generates the piece's possible moves and keeps the legal ones. A king may go anywhere that is not attacked once
+    // it has stepped away, and castling is only generated when it is already legal. Any other piece must land on one
+    // of the check evasion squares and, if pinned, stay on the line through its king and itself. En passant can
+    // expose the king along the row both pawns leave, so it is still checked by making the move.
+    private int addPieceLegalMoves(int square, int kingSquare, long checkEvasionSquares, long pinnedPieces,
+                                   boolean isCapturesOnly, int[] moveBuffer, int moveCount) {
+        int row = square / MAX_COLUMNS;
+        int column = square % MAX_COLUMNS;
+        int firstMoveIndex = moveCount;
+        Piece.PieceType pieceType = getPieceTypeAt(row, column);
+        int possibleMoveCount = isCapturesOnly ?
+                pieceType.getPossibleCaptures(row, column, this, moveBuffer, moveCount) :
+                pieceType.getPossibleMoves(row, column, this, moveBuffer, moveCount);
+        Piece.Color opponentColor = getOppositeTurnPlayerColor();
+        long occupiedSquaresWithoutKing = occupiedSquares & ~(1L << kingSquare);
+        long allowedTargetSquares = checkEvasionSquares;
+        if ((pinnedPieces & (1L << square)) != 0) {
+            allowedTargetSquares &= AttackTables.getLine(kingSquare, square);
+        }
 
-                Board newBoard = movePieceOnNewBoard(currentRowOfPiece, currentColumnOfPiece, targetRow, targetColumn,
-                        turnPlayerColor);
-                if (!newBoard.isKingInCheck()) {
-                    return false;
-                }
+        int legalMoveCount = firstMoveIndex;
+        for (int i = firstMoveIndex; i < possibleMoveCount; i++) {
+            int move = moveBuffer[i];
+            int targetSquare = Move.getTargetSquare(move);
+            boolean isMoveLegal;
+            if (square == kingSquare) {
+                isMoveLegal = Move.hasFlag(move, Move.FLAG_CASTLE) ||
+                        getSquareAttackers(targetSquare, opponentColor, occupiedSquaresWithoutKing) == 0;
+            } else if (Move.hasFlag(move, Move.FLAG_EN_PASSANT)) {
+                isMoveLegal = isMoveLegal(move);
+            } else {
+                isMoveLegal = (allowedTargetSquares & (1L << targetSquare)) != 0;
+            }
+            if (isMoveLegal) {
+                moveBuffer[legalMoveCount++] = move;
             }
         }
-        return true;
+        return legalMoveCount;
+    }
+
+    // The squares a piece other than the king may move to: anywhere when not in check, or else the checking piece's
+    // square and any squares between it and the king
+    private static long getCheckEvasionSquares(int kingSquare, long checkingPieces) {
+        if (checkingPieces == 0) {
+            return ~0L;
+        }
+        int checkingSquare = Long.numberOfTrailingZeros(checkingPieces);
+        return checkingPieces | AttackTables.getSquaresBetween(kingSquare, checkingSquare);
+    }
+
+    // A piece is pinned when it is the only piece between its own king and an opponent rook, bishop or queen that
+    // would otherwise attack the king along that line
+    private long getPinnedPieces(int kingSquare) {
+        Piece.Color opponentColor = getOppositeTurnPlayerColor();
+        long opponentPieces = colorBitboards[opponentColor.ordinal()];
+        long opponentQueens = getPieceBitboard(opponentColor, Piece.PieceType.QUEEN);
+        long pinningPieces = (AttackTables.getRookAttacks(kingSquare, opponentPieces) &
+                (getPieceBitboard(opponentColor, Piece.PieceType.ROOK) | opponentQueens)) |
+                (AttackTables.getBishopAttacks(kingSquare, opponentPieces) &
+                        (getPieceBitboard(opponentColor, Piece.PieceType.BISHOP) | opponentQueens));
+        long pinnedPieces = 0L;
+        while (pinningPieces != 0) {
+            int pinningSquare = Long.numberOfTrailingZeros(pinningPieces);
+            pinningPieces &= pinningPieces - 1;
+            long blockingPieces = AttackTables.getSquaresBetween(kingSquare, pinningSquare) & occupiedSquares;
+            if (Long.bitCount(blockingPieces) == 1) {
+                pinnedPieces |= blockingPieces;
+            }
+        }
+        return pinnedPieces & colorBitboards[turnPlayerColor.ordinal()];
+    }
+
+    private int getTurnPlayerKingSquare() {
+        int[] kingPosition = (turnPlayerColor == Piece.Color.WHITE) ? whiteKingPosition : blackKingPosition;
+        return getSquareIndex(kingPosition[0], kingPosition[1]);
+    }
+
+    // Returns the legal move of the piece on the current square that lands on the target square, or Move.NO_MOVE.
+    // Pawns reaching the last row are promoted to a queen, since row and column input cannot choose a piece.
+    int findLegalMove(int currentRow, int currentColumn, int targetRow, int targetColumn) {
+        if (!isSquareOccupiedByColor(currentRow, currentColumn, turnPlayerColor)) {
+            return Move.NO_MOVE;
+        }
+        int[] moveBuffer = new int[Move.MAX_MOVES];
+        int legalMoveCount = getPieceLegalMoves(currentRow, currentColumn, moveBuffer);
+        int targetSquare = getSquareIndex(targetRow, targetColumn);
+
+        for (int i = 0; i < legalMoveCount; i++) {
+            int move = moveBuffer[i];
+            if (Move.getTargetSquare(move) == targetSquare &&
+                    (!Move.hasFlag(move, Move.FLAG_PROMOTION) ||
+                            Move.getPromotionPieceType(move) == Piece.PieceType.QUEEN)) {
+                return move;
+            }
+        }
+        return Move.NO_MOVE;
+    }
+
+    // Successor boards are keyed by the square index of the piece that moved. As with movePieceOnNewBoard, each
+    // successor keeps the turn player of this board.
+    Map<Integer, List<Board>> getAllLegalBoardStates() {
+        Map<Integer, List<Board>> mapOfBoardStates = new HashMap<>();
+        int[] moveBuffer = new int[Move.MAX_MOVES];
+        int legalMoveCount = getAllPiecesLegalMoves(moveBuffer);
+
+        for (int i = 0; i < legalMoveCount; i++) {
+            int move = moveBuffer[i];
+            mapOfBoardStates.computeIfAbsent(Move.getCurrentSquare(move), square -> new ArrayList<>())
+                    .add(movePieceOnNewBoard(move, turnPlayerColor));
+        }
+        return mapOfBoardStates;
+    }
+
+    private int getTerminalState() {
+        if (terminalState == TERMINAL_STATE_UNKNOWN || terminalStateZobristKey != zobristKey) {
+            terminalState = computeTerminalState();
+            terminalStateZobristKey = zobristKey;
+        }
+        return terminalState;
+    }
+
+    // Searches for a legal move every time, bypassing the cache that isCheckmate and isStalemate go through
+    int computeTerminalState() {
+        if (terminalStateMoveGenerator == null) {
+            terminalStateMoveGenerator = new StagedMoveGenerator(this);
+        }
+        terminalStateMoveGenerator.reset();
+        if (terminalStateMoveGenerator.nextLegalMove() != Move.NO_MOVE) {
+            return TERMINAL_STATE_ONGOING;
+        } else if (isKingInCheck()) {
+            return TERMINAL_STATE_CHECKMATE;
+        } else {
+            return TERMINAL_STATE_STALEMATE;
+        }
     }
 
-    private boolean isKingInCheck() {
+    boolean isMoveLegal(int move) {
+        makeMove(move);
+        boolean isMoveLegal = !isOpponentKingInCheck();
+        unmakeMove();
+        return isMoveLegal;
+    }
+
+    // After a move has been made the turn player has already changed, so this checks the king of the player who
+    // just moved
+    private boolean isOpponentKingInCheck() {
+        if (turnPlayerColor == Piece.Color.WHITE) {
+            return isSquareAttackedBy(getSquareIndex(blackKingPosition[0], blackKingPosition[1]), turnPlayerColor);
+        } else {
+            return isSquareAttackedBy(getSquareIndex(whiteKingPosition[0], whiteKingPosition[1]), turnPlayerColor);
+        }
+    }
+
+    boolean isKingInCheck() {
         if (turnPlayerColor == Piece.Color.WHITE) {
             return isSquareUnderAttack(whiteKingPosition[0], whiteKingPosition[1]);
         } else {
@@ -152,106 +549,160 @@ class Board {
     }
 
     boolean isCheckmate() {
-        return (isKingInCheck() && areThereNoLegalMoves());
+        return getTerminalState() == TERMINAL_STATE_CHECKMATE;
     }
 
     boolean isStalemate() {
-        return (!isKingInCheck() && areThereNoLegalMoves());
+        return getTerminalState() == TERMINAL_STATE_STALEMATE;
     }
 
     private boolean isSquareUnderAttack(int row, int column) {
-        turnPlayerColor = getOppositeTurnPlayerColor();
-        for (int i = 0; i < MAX_ROWS; i++) {
-            for (int j = 0; j < MAX_COLUMNS; j++) {
-                if (boardLayout[i][j] == null || boardLayout[i][j].getColor() != turnPlayerColor) {
-                    continue;
-                }
-                List<int[]> pieceMoves = boardLayout[i][j].getPieceType().getPossibleMoves(i, j, this, true);
-                for (int[] currentMove : pieceMoves) {
-                    if (currentMove[0] == row && currentMove[1] == column) {
-                        turnPlayerColor = getOppositeTurnPlayerColor();
-                        return true;
-                    }
-                }
-            }
-        }
-        turnPlayerColor = getOppositeTurnPlayerColor();
-        return false;
+        return isSquareAttackedBy(getSquareIndex(row, column), getOppositeTurnPlayerColor());
     }
 
+    // The attacker's pieces that attack the square, with sliding pieces blocked by the given occupied squares
+    long getSquareAttackers(int square, Piece.Color attackerColor, long occupiedSquares) {
+        Piece.Color defenderColor = (attackerColor == Piece.Color.WHITE) ? Piece.Color.BLACK : Piece.Color.WHITE;
+        long queens = getPieceBitboard(attackerColor, Piece.PieceType.QUEEN);
+
+        return (AttackTables.getPawnAttacks(defenderColor, square) &
+                getPieceBitboard(attackerColor, Piece.PieceType.PAWN)) |
+                (AttackTables.getKnightAttacks(square) & getPieceBitboard(attackerColor, Piece.PieceType.KNIGHT)) |
+                (AttackTables.getKingAttacks(square) & getPieceBitboard(attackerColor, Piece.PieceType.KING)) |
+                (AttackTables.getBishopAttacks(square, occupiedSquares) &
+                        (getPieceBitboard(attackerColor, Piece.PieceType.BISHOP) | queens)) |
+                (AttackTables.getRookAttacks(square, occupiedSquares) &
+                        (getPieceBitboard(attackerColor, Piece.PieceType.ROOK) | queens));
+    }
 
-    private void addMoveToListIfLegal(int targetRow, int targetColumn, List<int[]> possibleMoves) {
-        if (targetRow < 0 || targetRow >= MAX_ROWS || targetColumn < 0 || targetColumn >= MAX_COLUMNS) {
-            return;
-        }
-        if (boardLayout[targetRow][targetColumn] == null ||
-                boardLayout[targetRow][targetColumn].getColor() != turnPlayerColor) {
-            possibleMoves.add(new int[]{targetRow, targetColumn});
-        }
+    // Rather than generating the attacker's moves, this looks outward from the square itself: a piece of the
+    // attacker's color attacks the square exactly when the same kind of piece standing on the square would attack it
+    boolean isSquareAttackedBy(int square, Piece.Color attackerColor) {
+        Piece.Color defenderColor = (attackerColor == Piece.Color.WHITE) ? Piece.Color.BLACK : Piece.Color.WHITE;
+        long queens = getPieceBitboard(attackerColor, Piece.PieceType.QUEEN);
+
+        return (AttackTables.getPawnAttacks(defenderColor, square) &
+                getPieceBitboard(attackerColor, Piece.PieceType.PAWN)) != 0 ||
+                (AttackTables.getKnightAttacks(square) &
+                        getPieceBitboard(attackerColor, Piece.PieceType.KNIGHT)) != 0 ||
+                (AttackTables.getKingAttacks(square) & getPieceBitboard(attackerColor, Piece.PieceType.KING)) != 0 ||
+                (AttackTables.getBishopAttacks(square, occupiedSquares) &
+                        (getPieceBitboard(attackerColor, Piece.PieceType.BISHOP) | queens)) != 0 ||
+                (AttackTables.getRookAttacks(square, occupiedSquares) &
+                        (getPieceBitboard(attackerColor, Piece.PieceType.ROOK) | queens)) != 0;
     }
 
-    List<int[]> getOrthogonalMoves(int row, int column) {
-        List<int[]> possibleMoves = new ArrayList<>();
-        for (int i = row - 1; i >= 0; i--) {
-            addMoveToListIfLegal(i, column, possibleMoves);
-            if (boardLayout[i][column] != null) {
-                break;
-            }
+    // Static exchange evaluation: the material, in centipawns, that the turn player expects to win by the move once the
+    // captures that follow on its target square are played out, without making any moves. Each side recaptures with
+    // its least valuable attacker, and either side may stop when going on would lose material. Pieces uncovered behind
+    // a capturing slider join in as the exchange opens their line. Pins and checks are ignored, so the result is an
+    // estimate; a negative score marks a capture that loses material.
+    int getStaticExchangeScore(int move) {
+        int currentSquare = Move.getCurrentSquare(move);
+        int targetSquare = Move.getTargetSquare(move);
+        Piece.PieceType movingPieceType = getPieceTypeAt(currentSquare / MAX_COLUMNS, currentSquare % MAX_COLUMNS);
+        long occupiedAfterExchange = occupiedSquares & ~(1L << currentSquare);
+        int capturedValue;
+        if (Move.hasFlag(move, Move.FLAG_EN_PASSANT)) {
+            capturedValue = Evaluation.PAWN_VALUE;
+            int capturedPawnSquare = getSquareIndex(currentSquare / MAX_COLUMNS, targetSquare % MAX_COLUMNS);
+            occupiedAfterExchange &= ~(1L << capturedPawnSquare);
+        } else {
+            Piece.PieceType capturedPieceType = getPieceTypeAt(targetSquare / MAX_COLUMNS, targetSquare % MAX_COLUMNS);
+            capturedValue = (capturedPieceType == null) ? 0 : Evaluation.getPieceValue(capturedPieceType);
         }
-        for (int i = row + 1; i < MAX_ROWS; i++) {
-            addMoveToListIfLegal(i, column, possibleMoves);
-            if (boardLayout[i][column] != null) {
-                break;
-            }
+        int pieceOnSquareValue = Evaluation.getPieceValue(movingPieceType);
+        Piece.PieceType promotionPieceType = Move.getPromotionPieceType(move);
+        if (promotionPieceType != null) {
+            capturedValue += Evaluation.getPieceValue(promotionPieceType) - Evaluation.PAWN_VALUE;
+            pieceOnSquareValue = Evaluation.getPieceValue(promotionPieceType);
         }
-        for (int i = column - 1; i >= 0; i--) {
-            addMoveToListIfLegal(row, i, possibleMoves);
-            if (boardLayout[row][i] != null) {
+        boolean isPromotionSquare = targetSquare < MAX_COLUMNS || targetSquare >= (MAX_ROWS - 1) * MAX_COLUMNS;
+
+        // exchangeGains[i] is what the side making the i-th capture has won if the exchange stops after it
+        exchangeGains[0] = capturedValue;
+        int captureCount = 1;
+        Piece.Color sideToCapture = getOppositeTurnPlayerColor();
+        while (captureCount < MAX_EXCHANGE_CAPTURES) {
+            long attackers = getSquareAttackers(targetSquare, sideToCapture, occupiedAfterExchange) &
+                    occupiedAfterExchange;
+            if (attackers == 0) {
                 break;
             }
-        }
-        for (int i = column + 1; i < MAX_COLUMNS; i++) {
-            addMoveToListIfLegal(row, i, possibleMoves);
-            if (boardLayout[row][i] != null) {
-                break;
+            Piece.PieceType attackerPieceType = null;
+            long attackerBit = 0;
+            for (Piece.PieceType pieceType : EXCHANGE_ATTACKER_ORDER) {
+                long pieces = attackers & getPieceBitboard(sideToCapture, pieceType);
+                if (pieces != 0) {
+                    attackerPieceType = pieceType;
+                    attackerBit = pieces & -pieces;
+                    break;
+                }
             }
-        }
-        return possibleMoves;
-    }
-
-    List<int[]> getDiagonalMoves(int row, int column) {
-        List<int[]> possibleMoves = new ArrayList<>();
-        for (int i = row - 1, j = column - 1; i >= 0 && j >= 0; i--, j--) {
-            addMoveToListIfLegal(i, j, possibleMoves);
-            if (boardLayout[i][j] != null) {
+            Piece.Color otherSide = (sideToCapture == Piece.Color.WHITE) ? Piece.Color.BLACK : Piece.Color.WHITE;
+            // A king may only take last, onto a square the other side no longer attacks
+            if (attackerPieceType == Piece.PieceType.KING && (getSquareAttackers(targetSquare, otherSide,
+                    occupiedAfterExchange & ~attackerBit) & occupiedAfterExchange) != 0) {
                 break;
             }
-        }
-        for (int i = row - 1, j = column + 1; i >= 0 && j < MAX_COLUMNS; i--, j++) {
-            addMoveToListIfLegal(i, j, possibleMoves);
-            if (boardLayout[i][j] != null) {
-                break;
+
+            exchangeGains[captureCount] = pieceOnSquareValue - exchangeGains[captureCount - 1];
+            pieceOnSquareValue = Evaluation.getPieceValue(attackerPieceType);
+            if (attackerPieceType == Piece.PieceType.PAWN && isPromotionSquare) {
+                exchangeGains[captureCount] += Evaluation.QUEEN_VALUE - Evaluation.PAWN_VALUE;
+                pieceOnSquareValue = Evaluation.QUEEN_VALUE;
             }
+            captureCount++;
+            occupiedAfterExchange &= ~attackerBit;
+            sideToCapture = otherSide;
         }
-        for (int i = row + 1, j = column - 1; i < MAX_ROWS && j >= 0; i++, j--) {
-            addMoveToListIfLegal(i, j, possibleMoves);
-            if (boardLayout[i][j] != null) {
-                break;
-            }
+
+        // Working back from the last capture, each side only makes its capture if it does better than stopping
+        for (int i = captureCount - 1; i > 0; i--) {
+            exchangeGains[i - 1] = -Math.max(-exchangeGains[i - 1], exchangeGains[i]);
         }
-        for (int i = row + 1, j = column + 1; i < MAX_ROWS && j < MAX_COLUMNS; i++, j++) {
-            addMoveToListIfLegal(i, j, possibleMoves);
-            if (boardLayout[i][j] != null) {
-                break;
-            }
+        return exchangeGains[0];
+    }
+
+    static int addMovesToTargetSquares(int currentSquare, long targetSquares, int[] moveBuffer, int moveCount) {
+        while (targetSquares != 0) {
+            moveBuffer[moveCount++] = Move.encode(currentSquare, Long.numberOfTrailingZeros(targetSquares), 0);
+            targetSquares &= targetSquares - 1;
         }
-        return possibleMoves;
+        return moveCount;
+    }
+
+    int getOrthogonalMoves(int row, int column, int[] moveBuffer, int moveCount) {
+        int currentSquare = getSquareIndex(row, column);
+        long targetSquares = AttackTables.getRookAttacks(currentSquare, occupiedSquares) &
+                ~colorBitboards[turnPlayerColor.ordinal()];
+        return addMovesToTargetSquares(currentSquare, targetSquares, moveBuffer, moveCount);
+    }
+
+    int getDiagonalMoves(int row, int column, int[] moveBuffer, int moveCount) {
+        int currentSquare = getSquareIndex(row, column);
+        long targetSquares = AttackTables.getBishopAttacks(currentSquare, occupiedSquares) &
+                ~colorBitboards[turnPlayerColor.ordinal()];
+        return addMovesToTargetSquares(currentSquare, targetSquares, moveBuffer, moveCount);
+    }
+
+    int getOrthogonalCaptures(int row, int column, int[] moveBuffer, int moveCount) {
+        int currentSquare = getSquareIndex(row, column);
+        long targetSquares = AttackTables.getRookAttacks(currentSquare, occupiedSquares) &
+                colorBitboards[getOppositeTurnPlayerColor().ordinal()];
+        return addMovesToTargetSquares(currentSquare, targetSquares, moveBuffer, moveCount);
+    }
+
+    int getDiagonalCaptures(int row, int column, int[] moveBuffer, int moveCount) {
+        int currentSquare = getSquareIndex(row, column);
+        long targetSquares = AttackTables.getBishopAttacks(currentSquare, occupiedSquares) &
+                colorBitboards[getOppositeTurnPlayerColor().ordinal()];
+        return addMovesToTargetSquares(currentSquare, targetSquares, moveBuffer, moveCount);
     }
 
     boolean canCastleLeft() {
         int kingRow;
         int kingColumn;
-        Piece playerKing;
 
         if (turnPlayerColor == Piece.Color.WHITE) {
             kingRow = whiteKingPosition[0];
@@ -261,19 +712,23 @@ class Board {
             kingColumn = blackKingPosition[1];
         }
 
-        playerKing = boardLayout[kingRow][kingColumn];
-        if (playerKing.getPieceType() != Piece.PieceType.KING_UNMOVED || isKingInCheck()) {
+        if (getPieceTypeAt(kingRow, kingColumn) != Piece.PieceType.KING_UNMOVED || isKingInCheck()) {
             return false;
         }
 
-        Piece leftCornerSquare = boardLayout[kingRow][0];
-        if (leftCornerSquare == null || leftCornerSquare.getPieceType() != Piece.PieceType.ROOK_UNMOVED ||
-                leftCornerSquare.getColor() != turnPlayerColor) {
+        if (getPieceTypeAt(kingRow, 0) != Piece.PieceType.ROOK_UNMOVED ||
+                !isSquareOccupiedByColor(kingRow, 0, turnPlayerColor)) {
             return false;
         }
 
         for (int i = 1; i < 3; i++) {
-            if (boardLayout[kingRow][kingColumn - i] != null || isSquareUnderAttack(kingRow, kingColumn - i)) {
+            if (!isSquareEmpty(kingRow, kingColumn - i) || isSquareUnderAttack(kingRow, kingColumn - i)) {
+                return false;
+            }
+        }
+        // The rook also passes over the square beside it, which must be empty even though it may be attacked
+        for (int i = 1; i < kingColumn - 2; i++) {
+            if (!isSquareEmpty(kingRow, i)) {
                 return false;
             }
         }
@@ -283,7 +738,6 @@ class Board {
     boolean canCastleRight() {
         int kingRow;
         int kingColumn;
-        Piece playerKing;
 
         if (turnPlayerColor == Piece.Color.WHITE) {
             kingRow = whiteKingPosition[0];
@@ -293,19 +747,17 @@ class Board {
             kingColumn = blackKingPosition[1];
         }
 
-        playerKing = boardLayout[kingRow][kingColumn];
-        if (playerKing.getPieceType() != Piece.PieceType.KING_UNMOVED || isKingInCheck()) {
+        if (getPieceTypeAt(kingRow, kingColumn) != Piece.PieceType.KING_UNMOVED || isKingInCheck()) {
             return false;
         }
 
-        Piece rightCornerSquare = boardLayout[kingRow][MAX_COLUMNS - 1];
-        if (rightCornerSquare == null || rightCornerSquare.getPieceType() != Piece.PieceType.ROOK_UNMOVED||
-                rightCornerSquare.getColor() != turnPlayerColor) {
+        if (getPieceTypeAt(kingRow, MAX_COLUMNS - 1) != Piece.PieceType.ROOK_UNMOVED ||
+                !isSquareOccupiedByColor(kingRow, MAX_COLUMNS - 1, turnPlayerColor)) {
             return false;
         }
 
         for (int i = 1; i < 3; i++) {
-            if (boardLayout[kingRow][kingColumn + i] != null || isSquareUnderAttack(kingRow, kingColumn + i)) {
+            if (!isSquareEmpty(kingRow, kingColumn + i) || isSquareUnderAttack(kingRow, kingColumn + i)) {
                 return false;
             }
         }
@@ -322,32 +774,126 @@ class Board {
 
     Board movePieceOnNewBoard(int currentRow, int currentColumn, int targetRow, int targetColumn,
                               Piece.Color newBoardColor) {
-        Board newBoard = new Board(newBoardColor, whiteKingPosition, blackKingPosition, this);
+        int move = findLegalMove(currentRow, currentColumn, targetRow, targetColumn);
+        assert (move != Move.NO_MOVE) : "Only legal moves can be made on a new board.";
+        return movePieceOnNewBoard(move, newBoardColor);
+    }
+
+    Board copyBoard() {
+        return new Board(turnPlayerColor, whiteKingPosition, blackKingPosition, this);
+    }
 
-        Piece.PieceType currentPieceType = checkAndAlterMovingPieceType(boardLayout[currentRow][currentColumn].getPieceType());
-        Piece.Color currentPieceColor =  boardLayout[currentRow][currentColumn].getColor();
+    Board movePieceOnNewBoard(int move, Piece.Color newBoardColor) {
+        Board newBoard = new Board(turnPlayerColor, whiteKingPosition, blackKingPosition, this);
+        newBoard.makeMove(move);
+        newBoard.setTurnPlayerColor(newBoardColor);
+        return newBoard;
+    }
 
-        if (currentPieceType == Piece.PieceType.PAWN || boardLayout[targetRow][targetColumn] != null) {
-            newBoard.pawnMovedOrPieceTaken = true;
+    void makeMove(int move) {
+        int currentSquare = Move.getCurrentSquare(move);
+        int targetSquare = Move.getTargetSquare(move);
+        int currentRow = currentSquare / MAX_COLUMNS;
+        int currentColumn = currentSquare % MAX_COLUMNS;
+        int targetRow = targetSquare / MAX_COLUMNS;
+        int targetColumn = targetSquare % MAX_COLUMNS;
+
+        Piece.PieceType originalPieceType = getPieceTypeAt(currentRow, currentColumn);
+        Piece.PieceType currentPieceType = checkAndAlterMovingPieceType(originalPieceType);
+        Piece.Color currentPieceColor = getPieceColorAt(currentRow, currentColumn);
+
+        // An en passant capture takes the pawn beside the moving pawn rather than one on the target square
+        int capturedRow = Move.hasFlag(move, Move.FLAG_EN_PASSANT) ? currentRow : targetRow;
+        Piece.PieceType capturedPieceType = getPieceTypeAt(capturedRow, targetColumn);
+
+        pushUndoRecord(move, originalPieceType, capturedPieceType);
+
+        int previousCastlingRights = getCastlingRights();
+        if (isEnPassantSquareHashed()) {
+            zobristKey ^= Zobrist.getEnPassantKey(enPassantTargetSquare);
         }
 
-        for (int newBoardRow = 0; newBoardRow < MAX_ROWS; newBoardRow++) {
-            for (int newBoardColumn = 0; newBoardColumn < MAX_COLUMNS; newBoardColumn++) {
-                if (newBoardRow == targetRow && newBoardColumn == targetColumn) {
-                    newBoard.boardLayout[newBoardRow][newBoardColumn] = new Piece(currentPieceColor, currentPieceType);
-                } else if ((boardLayout[newBoardRow][newBoardColumn] == null) ||
-                        (newBoardRow == currentRow && newBoardColumn == currentColumn)) {
-                    newBoard.boardLayout[newBoardRow][newBoardColumn] = null;
-                } else {
-                    Piece thisSquarePiece = boardLayout[newBoardRow][newBoardColumn];
-                    newBoard.boardLayout[newBoardRow][newBoardColumn] = new Piece(thisSquarePiece.getColor(),
-                            thisSquarePiece.getPieceType());
-                }
-            }
+        if (currentPieceType == Piece.PieceType.PAWN || capturedPieceType != null) {
+            halfmoveClock = 0;
+        } else {
+            halfmoveClock++;
         }
-        newBoard.adjustBoardLayoutForUnusualSituations(currentRow, currentColumn, targetRow, targetColumn,
-                currentPieceType);
-        return newBoard;
+        if (Move.hasFlag(move, Move.FLAG_DOUBLE_PAWN_PUSH)) {
+            enPassantTargetSquare = getSquareIndex((currentRow + targetRow) / 2, currentColumn);
+        } else {
+            enPassantTargetSquare = NO_SQUARE;
+        }
+
+        removePiece(capturedRow, targetColumn);
+        removePiece(currentRow, currentColumn);
+        if (Move.hasFlag(move, Move.FLAG_PROMOTION)) {
+            placePiece(targetRow, targetColumn, currentPieceColor, Move.getPromotionPieceType(move));
+        } else {
+            placePiece(targetRow, targetColumn, currentPieceColor, currentPieceType);
+        }
+        adjustBoardLayoutForUnusualSituations(currentRow, currentColumn, targetRow, targetColumn, currentPieceType);
+        if (currentPieceColor == Piece.Color.BLACK) {
+            fullmoveNumber++;
+        }
+        turnPlayerColor = getOppositeTurnPlayerColor();
+
+        zobristKey ^= Zobrist.getCastlingRightsKey(previousCastlingRights) ^
+                Zobrist.getCastlingRightsKey(getCastlingRights()) ^ Zobrist.getBlackToMoveKey();
+        if (isEnPassantSquareHashed()) {
+            zobristKey ^= Zobrist.getEnPassantKey(enPassantTargetSquare);
+        }
+    }
+
+    void unmakeMove() {
+        long undoRecord = undoStack[--undoStackSize];
+        int move = (int) (undoRecord & MOVE_MASK);
+        Piece.PieceType originalPieceType =
+                PIECE_TYPES[(int) ((undoRecord >>> UNDO_MOVING_PIECE_SHIFT) & PIECE_TYPE_MASK)];
+        int capturedPieceIndex = (int) ((undoRecord >>> UNDO_CAPTURED_PIECE_SHIFT) & PIECE_TYPE_MASK);
+        int currentSquare = Move.getCurrentSquare(move);
+        int targetSquare = Move.getTargetSquare(move);
+        int currentRow = currentSquare / MAX_COLUMNS;
+        int currentColumn = currentSquare % MAX_COLUMNS;
+        int targetRow = targetSquare / MAX_COLUMNS;
+        int targetColumn = targetSquare % MAX_COLUMNS;
+
+        // The moving piece's color is read back from the board, since movePieceOnNewBoard may have overridden whose
+        // turn it is after the move was made
+        turnPlayerColor = getPieceColorAt(targetRow, targetColumn);
+        if (turnPlayerColor == Piece.Color.BLACK) {
+            fullmoveNumber--;
+        }
+        removePiece(targetRow, targetColumn);
+        placePiece(currentRow, currentColumn, turnPlayerColor, originalPieceType);
+        if (capturedPieceIndex != 0) {
+            int capturedRow = Move.hasFlag(move, Move.FLAG_EN_PASSANT) ? currentRow : targetRow;
+            placePiece(capturedRow, targetColumn, getOppositeTurnPlayerColor(), PIECE_TYPES[capturedPieceIndex - 1]);
+        }
+        if (checkAndAlterMovingPieceType(originalPieceType) == Piece.PieceType.KING) {
+            checkAndUpdateKingPosition(currentRow, currentColumn);
+            checkAndRestoreRookAfterCastling(currentRow, currentColumn, targetColumn);
+        }
+
+        enPassantTargetSquare =
+                (int) ((undoRecord >>> UNDO_EN_PASSANT_SQUARE_SHIFT) & EN_PASSANT_SQUARE_MASK) + NO_SQUARE;
+        halfmoveClock = (int) ((undoRecord >>> UNDO_HALFMOVE_CLOCK_SHIFT) & HALFMOVE_CLOCK_MASK);
+        zobristKey = zobristKeyHistory[--zobristKeyHistorySize];
+    }
+
+    private void pushUndoRecord(int move, Piece.PieceType originalPieceType, Piece.PieceType capturedPieceType) {
+        if (undoStackSize == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, Math.max(16, undoStack.length * 2));
+        }
+        if (zobristKeyHistorySize == zobristKeyHistory.length) {
+            zobristKeyHistory = Arrays.copyOf(zobristKeyHistory, Math.max(16, zobristKeyHistory.length * 2));
+        }
+        zobristKeyHistory[zobristKeyHistorySize++] = zobristKey;
+        int capturedPieceIndex = (capturedPieceType == null) ? 0 : capturedPieceType.ordinal() + 1;
+        undoStack[undoStackSize++] = (move & MOVE_MASK) |
+                ((long) originalPieceType.ordinal() << UNDO_MOVING_PIECE_SHIFT) |
+                ((long) capturedPieceIndex << UNDO_CAPTURED_PIECE_SHIFT) |
+                ((long) (enPassantTargetSquare - NO_SQUARE) << UNDO_EN_PASSANT_SQUARE_SHIFT) |
+                ((long) Math.min(halfmoveClock, (int) HALFMOVE_CLOCK_MASK) << UNDO_HALFMOVE_CLOCK_SHIFT);
     }
 
     private void adjustBoardLayoutForUnusualSituations(int currentRow, int currentColumn, int targetRow,
@@ -355,9 +901,6 @@ class Board {
         if (currentPieceType == Piece.PieceType.KING) {
             checkAndUpdateKingPosition(targetRow, targetColumn);
             checkAndAdjustRookAfterCastling(currentRow, currentColumn, targetColumn);
-        } else if (currentPieceType == Piece.PieceType.PAWN) {
-            checkAndPromotePawn(targetRow, targetColumn);
-            checkAndCaptureEnPassantPawn(currentRow, currentColumn, targetRow, targetColumn);
         }
     }
 
@@ -372,81 +915,377 @@ class Board {
         return movingPieceType;
     }
 
-    private void checkAndPromotePawn(int targetRow, int targetColumn) {
-        if (targetRow == 0 || targetRow == MAX_ROWS - 1) {
-            boardLayout[targetRow][targetColumn] = new Piece(turnPlayerColor, Piece.PieceType.QUEEN);
-        }
-    }
-
-    private void checkAndCaptureEnPassantPawn(int currentRow, int currentColumn, int targetRow, int targetColumn) {
-        if (previousBoard.boardLayout[targetRow][targetColumn] == null && Math.abs(targetColumn - currentColumn) == 1) {
-            boardLayout[currentRow][targetColumn] = null;
+    private void checkAndAdjustRookAfterCastling(int currentRow, int currentColumn, int targetColumn) {
+        if (targetColumn - currentColumn == 2) {
+            placePiece(currentRow, currentColumn + 1, turnPlayerColor, Piece.PieceType.ROOK);
+            removePiece(currentRow, MAX_COLUMNS - 1);
+        } else if (targetColumn - currentColumn == -2) {
+            placePiece(currentRow, currentColumn - 1, turnPlayerColor, Piece.PieceType.ROOK);
+            removePiece(currentRow, 0);
         }
     }
 
-    private void checkAndAdjustRookAfterCastling(int currentRow, int currentColumn, int targetColumn) {
+    private void checkAndRestoreRookAfterCastling(int currentRow, int currentColumn, int targetColumn) {
         if (targetColumn - currentColumn == 2) {
-            boardLayout[currentRow][currentColumn + 1] = new Piece(turnPlayerColor, Piece.PieceType.ROOK);
-            boardLayout[currentRow][MAX_COLUMNS - 1] = null;
+            removePiece(currentRow, currentColumn + 1);
+            placePiece(currentRow, MAX_COLUMNS - 1, turnPlayerColor, Piece.PieceType.ROOK_UNMOVED);
         } else if (targetColumn - currentColumn == -2) {
-            boardLayout[currentRow][currentColumn - 1] = new Piece(turnPlayerColor, Piece.PieceType.ROOK);
-            boardLayout[currentRow][0] = null;
+            removePiece(currentRow, currentColumn - 1);
+            placePiece(currentRow, 0, turnPlayerColor, Piece.PieceType.ROOK_UNMOVED);
         }
     }
 
     private void checkAndUpdateKingPosition(int row, int column) {
         if (turnPlayerColor == Piece.Color.WHITE) {
-            whiteKingPosition = new int[]{row, column};
+            whiteKingPosition[0] = row;
+            whiteKingPosition[1] = column;
         } else {
-            blackKingPosition = new int[]{row, column};
+            blackKingPosition[0] = row;
+            blackKingPosition[1] = column;
         }
     }
 
     private void emptyBoardLayout() {
-        boardLayout = new Piece[MAX_ROWS][MAX_COLUMNS];
+        Arrays.fill(pieceBitboards, 0L);
+        Arrays.fill(colorBitboards, 0L);
+        occupiedSquares = 0L;
+        middlegameScore = 0;
+        endgameScore = 0;
+        gamePhase = 0;
+        halfmoveClock = 0;
+        undoStackSize = 0;
+        zobristKeyHistorySize = 0;
     }
 
     void initializeBoardLayout() {
         emptyBoardLayout();
         turnPlayerColor = Piece.Color.WHITE;
-        previousBoard = new Board();
+        whiteKingPosition = new int[]{7, 4};
+        blackKingPosition = new int[]{0, 4};
+        enPassantTargetSquare = NO_SQUARE;
+        fullmoveNumber = 1;
 
-        for (int i = 0; i < MAX_ROWS; i++) {
-            boardLayout[1][i] = new Piece(Piece.Color.BLACK, Piece.PieceType.PAWN_UNMOVED);
-            boardLayout[6][i] = new Piece(Piece.Color.WHITE, Piece.PieceType.PAWN_UNMOVED);
-        }
-        boardLayout[0][0] = boardLayout[0][7] = new Piece(Piece.Color.BLACK, Piece.PieceType.ROOK_UNMOVED);
-        boardLayout[7][0] = boardLayout[7][7] = new Piece(Piece.Color.WHITE, Piece.PieceType.ROOK_UNMOVED);
-        boardLayout[0][1] = boardLayout[0][6] = new Piece(Piece.Color.BLACK, Piece.PieceType.KNIGHT);
-        boardLayout[7][1] = boardLayout[7][6] = new Piece(Piece.Color.WHITE, Piece.PieceType.KNIGHT);
-        boardLayout[0][2] = boardLayout[0][5] = new Piece(Piece.Color.BLACK, Piece.PieceType.BISHOP);
-        boardLayout[7][2] = boardLayout[7][5] = new Piece(Piece.Color.WHITE, Piece.PieceType.BISHOP);
-        boardLayout[0][3] = new Piece(Piece.Color.BLACK, Piece.PieceType.QUEEN);
-        boardLayout[7][3] = new Piece(Piece.Color.WHITE, Piece.PieceType.QUEEN);
-        boardLayout[0][4] = new Piece(Piece.Color.BLACK, Piece.PieceType.KING_UNMOVED);
-        boardLayout[7][4] = new Piece(Piece.Color.WHITE, Piece.PieceType.KING_UNMOVED);
-
-        for(int i = 0; i < MAX_ROWS; i++) {
-            for (int j = 0; j < MAX_COLUMNS; j++) {
-                System.arraycopy(boardLayout[i], 0, previousBoard.boardLayout[i], 0, 8);
-            }
+        for (int i = 0; i < MAX_COLUMNS; i++) {
+            placePiece(1, i, Piece.Color.BLACK, Piece.PieceType.PAWN_UNMOVED);
+            placePiece(6, i, Piece.Color.WHITE, Piece.PieceType.PAWN_UNMOVED);
+        }
+        Piece.PieceType[] backRankPieceTypes = {Piece.PieceType.ROOK_UNMOVED, Piece.PieceType.KNIGHT,
+                Piece.PieceType.BISHOP, Piece.PieceType.QUEEN, Piece.PieceType.KING_UNMOVED, Piece.PieceType.BISHOP,
+                Piece.PieceType.KNIGHT, Piece.PieceType.ROOK_UNMOVED};
+        for (int i = 0; i < MAX_COLUMNS; i++) {
+            placePiece(0, i, Piece.Color.BLACK, backRankPieceTypes[i]);
+            placePiece(7, i, Piece.Color.WHITE, backRankPieceTypes[i]);
         }
+        zobristKey = computeZobristKey();
     }
 
+    // The grid view is only built for callers that need it, such as printing or validating human input. All move
+    // generation reads the bitboards directly.
     Piece[][] getBoardLayout() {
+        Piece[][] boardLayout = new Piece[MAX_ROWS][MAX_COLUMNS];
+        long remainingPieces = occupiedSquares;
+        while (remainingPieces != 0) {
+            int square = Long.numberOfTrailingZeros(remainingPieces);
+            remainingPieces &= remainingPieces - 1;
+            int row = square / MAX_COLUMNS;
+            int column = square % MAX_COLUMNS;
+            boardLayout[row][column] = Piece.of(getPieceColorAt(row, column), getPieceTypeAt(row, column));
+        }
         return boardLayout;
     }
 
     public void setBoardLayout(Piece[][] boardLayout) {
-        this.boardLayout = boardLayout;
+        emptyBoardLayout();
+        for (int i = 0; i < MAX_ROWS; i++) {
+            for (int j = 0; j < MAX_COLUMNS; j++) {
+                if (boardLayout[i][j] != null) {
+                    placePiece(i, j, boardLayout[i][j].getColor(), boardLayout[i][j].getPieceType());
+                }
+            }
+        }
+        zobristKey = computeZobristKey();
+    }
+
+    static Board fromFen(String fen) {
+        Board board = new Board();
+        board.loadFen(fen);
+        return board;
+    }
+
+    // Replaces this board's position with one in Forsyth-Edwards Notation. The fen is read in a single pass without
+    // splitting it, so a board can be reused to load many positions cheaply. Pawns on their starting row are unmoved,
+    // and kings and rooks are unmoved exactly when the castling field gives them a right. The halfmove and fullmove
+    // fields may be left off. Malformed notation throws an IllegalArgumentException.
+    void loadFen(String fen) {
+        emptyBoardLayout();
+        enPassantTargetSquare = NO_SQUARE;
+        fullmoveNumber = 1;
+        int whiteKingSquare = NO_SQUARE;
+        int blackKingSquare = NO_SQUARE;
+
+        int index = 0;
+        int row = 0;
+        int column = 0;
+        for (; index < fen.length() && fen.charAt(index) != ' '; index++) {
+            char fenCharacter = fen.charAt(index);
+            if (fenCharacter == '/') {
+                if (column != MAX_COLUMNS) {
+                    throw new IllegalArgumentException("FEN row " + (row + 1) + " does not have 8 squares: " + fen);
+                }
+                row++;
+                column = 0;
+            } else if (fenCharacter >= '1' && fenCharacter <= '8') {
+                column += fenCharacter - '0';
+            } else {
+                if (row >= MAX_ROWS || column >= MAX_COLUMNS) {
+                    throw new IllegalArgumentException("FEN piece placement runs off the board: " + fen);
+                }
+                Piece.Color color = Character.isUpperCase(fenCharacter) ? Piece.Color.WHITE : Piece.Color.BLACK;
+                Piece.PieceType pieceType = getPieceTypeFromFen(Character.toLowerCase(fenCharacter), color, row, fen);
+                if (pieceType == Piece.PieceType.KING) {
+                    if (color == Piece.Color.WHITE) {
+                        whiteKingSquare = getSquareIndex(row, column);
+                    } else {
+                        blackKingSquare = getSquareIndex(row, column);
+                    }
+                }
+                placePiece(row, column, color, pieceType);
+                column++;
+            }
+            if (column > MAX_COLUMNS) {
+                throw new IllegalArgumentException("FEN row " + (row + 1) + " has more than 8 squares: " + fen);
+            }
+        }
+        if (row != MAX_ROWS - 1 || column != MAX_COLUMNS) {
+            throw new IllegalArgumentException("FEN piece placement does not cover the board: " + fen);
+        }
+        if (Long.bitCount(getPieceBitboard(Piece.Color.WHITE, Piece.PieceType.KING)) != 1 ||
+                Long.bitCount(getPieceBitboard(Piece.Color.BLACK, Piece.PieceType.KING)) != 1) {
+            throw new IllegalArgumentException("FEN must have exactly one king of each color: " + fen);
+        }
+        if ((AttackTables.getKingAttacks(whiteKingSquare) & (1L << blackKingSquare)) != 0) {
+            throw new IllegalArgumentException("FEN kings cannot stand next to each other: " + fen);
+        }
+        whiteKingPosition = new int[]{whiteKingSquare / MAX_COLUMNS, whiteKingSquare % MAX_COLUMNS};
+        blackKingPosition = new int[]{blackKingSquare / MAX_COLUMNS, blackKingSquare % MAX_COLUMNS};
+
+        index = skipFenSpaces(fen, index);
+        if (index >= fen.length() || (fen.charAt(index) != 'w' && fen.charAt(index) != 'b')) {
+            throw new IllegalArgumentException("FEN turn player must be 'w' or 'b': " + fen);
+        }
+        turnPlayerColor = (fen.charAt(index++) == 'w') ? Piece.Color.WHITE : Piece.Color.BLACK;
+        int opponentKingSquare = (turnPlayerColor == Piece.Color.WHITE) ? blackKingSquare : whiteKingSquare;
+        if (isSquareAttackedBy(opponentKingSquare, turnPlayerColor)) {
+            throw new IllegalArgumentException("FEN player not to move cannot be in check: " + fen);
+        }
+
+        index = skipFenSpaces(fen, index);
+        for (; index < fen.length() && fen.charAt(index) != ' '; index++) {
+            char fenCharacter = fen.charAt(index);
+            if (fenCharacter != '-') {
+                markCastlingPiecesUnmoved(fenCharacter, fen);
+            }
+        }
+
+        index = skipFenSpaces(fen, index);
+        if (index < fen.length() && fen.charAt(index) != '-') {
+            if (index + 1 >= fen.length() || fen.charAt(index) < 'a' || fen.charAt(index) > 'h' ||
+                    fen.charAt(index + 1) < '1' || fen.charAt(index + 1) > '8') {
+                throw new IllegalArgumentException("FEN en passant square is not a square: " + fen);
+            }
+            enPassantTargetSquare = getSquareIndex(MAX_ROWS - (fen.charAt(index + 1) - '0'),
+                    fen.charAt(index) - 'a');
+            if (!isEnPassantTargetPossible(enPassantTargetSquare)) {
+                throw new IllegalArgumentException("FEN en passant square does not follow a two-square pawn " +
+                        "advance by the player not to move: " + fen);
+            }
+            index += 2;
+        } else {
+            index++;
+        }
+
+        index = skipFenSpaces(fen, index);
+        if (index < fen.length()) {
+            int fieldEnd = getFenFieldEnd(fen, index);
+            halfmoveClock = parseFenNumber(fen, index, fieldEnd);
+            index = skipFenSpaces(fen, fieldEnd);
+            if (index < fen.length()) {
+                fullmoveNumber = Math.max(1, parseFenNumber(fen, index, getFenFieldEnd(fen, index)));
+            }
+        }
+        zobristKey = computeZobristKey();
+    }
+
+    // The opponent's pawn must have just passed over the square from its starting row, so the square is behind that
+    // pawn, on the row it skipped, and both it and the pawn's starting square are empty
+    private boolean isEnPassantTargetPossible(int targetSquare) {
+        int direction = (turnPlayerColor == Piece.Color.WHITE) ? 1 : -1;
+        int skippedRow = (turnPlayerColor == Piece.Color.WHITE) ? 2 : MAX_ROWS - 3;
+        int row = targetSquare / MAX_COLUMNS;
+        int column = targetSquare % MAX_COLUMNS;
+        if (row != skippedRow) {
+            return false;
+        }
+        long opponentPawns = getPieceBitboard(getOppositeTurnPlayerColor(), Piece.PieceType.PAWN);
+        return (opponentPawns & (1L << getSquareIndex(row + direction, column))) != 0 &&
+                isSquareEmpty(row, column) && isSquareEmpty(row - direction, column);
+    }
+
+    private static Piece.PieceType getPieceTypeFromFen(char fenCharacter, Piece.Color color, int row, String fen) {
+        switch (fenCharacter) {
+            case 'p':
+                if (row == 0 || row == MAX_ROWS - 1) {
+                    throw new IllegalArgumentException("FEN has a pawn on the first or last row: " + fen);
+                }
+                int startingRow = (color == Piece.Color.WHITE) ? MAX_ROWS - 2 : 1;
+                return (row == startingRow) ? Piece.PieceType.PAWN_UNMOVED : Piece.PieceType.PAWN;
+            case 'n':
+                return Piece.PieceType.KNIGHT;
+            case 'b':
+                return Piece.PieceType.BISHOP;
+            case 'r':
+                return Piece.PieceType.ROOK;
+            case 'q':
+                return Piece.PieceType.QUEEN;
+            case 'k':
+                return Piece.PieceType.KING;
+            default:
+                throw new IllegalArgumentException("Unknown FEN piece '" + fenCharacter + "': " + fen);
+        }
+    }
+
+    // A castling right means that the king and that rook are still on their starting squares, unmoved
+    private void markCastlingPiecesUnmoved(char castlingCharacter, String fen) {
+        Piece.Color color = Character.isUpperCase(castlingCharacter) ? Piece.Color.WHITE : Piece.Color.BLACK;
+        int backRow = (color == Piece.Color.WHITE) ? MAX_ROWS - 1 : 0;
+        int rookColumn;
+        switch (Character.toLowerCase(castlingCharacter)) {
+            case 'k':
+                rookColumn = MAX_COLUMNS - 1;
+                break;
+            case 'q':
+                rookColumn = 0;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown FEN castling right '" + castlingCharacter + "': " + fen);
+        }
+
+        Piece.PieceType kingType = getPieceTypeAt(backRow, 4);
+        Piece.PieceType rookType = getPieceTypeAt(backRow, rookColumn);
+        if (getPieceColorAt(backRow, 4) != color || getPieceColorAt(backRow, rookColumn) != color ||
+                (kingType != Piece.PieceType.KING && kingType != Piece.PieceType.KING_UNMOVED) ||
+                (rookType != Piece.PieceType.ROOK && rookType != Piece.PieceType.ROOK_UNMOVED)) {
+            throw new IllegalArgumentException("FEN castling right '" + castlingCharacter +
+                    "' has no king and rook on their starting squares: " + fen);
+        }
+        removePiece(backRow, 4);
+        placePiece(backRow, 4, color, Piece.PieceType.KING_UNMOVED);
+        removePiece(backRow, rookColumn);
+        placePiece(backRow, rookColumn, color, Piece.PieceType.ROOK_UNMOVED);
+    }
+
+    private static int skipFenSpaces(String fen, int index) {
+        while (index < fen.length() && fen.charAt(index) == ' ') {
+            index++;
+        }
+        return index;
+    }
+
+    private static int getFenFieldEnd(String fen, int index) {
+        while (index < fen.length() && fen.charAt(index) != ' ') {
+            index++;
+        }
+        return index;
+    }
+
+    private static int parseFenNumber(String fen, int start, int end) {
+        int number = 0;
+        for (int i = start; i < end; i++) {
+            char digit = fen.charAt(i);
+            if (digit < '0' || digit > '9' || number > (Integer.MAX_VALUE - 9) / 10) {
+                throw new IllegalArgumentException("FEN move counter is not a number: " + fen);
+            }
+            number = number * 10 + (digit - '0');
+        }
+        return number;
+    }
+
+    String toFen() {
+        StringBuilder fen = new StringBuilder(90);
+        for (int row = 0; row < MAX_ROWS; row++) {
+            int emptySquareCount = 0;
+            for (int column = 0; column < MAX_COLUMNS; column++) {
+                Piece.Color color = getPieceColorAt(row, column);
+                if (color == null) {
+                    emptySquareCount++;
+                    continue;
+                }
+                if (emptySquareCount > 0) {
+                    fen.append(emptySquareCount);
+                    emptySquareCount = 0;
+                }
+                char fenCharacter = getFenCharacter(getPieceTypeAt(row, column));
+                fen.append((color == Piece.Color.WHITE) ? Character.toUpperCase(fenCharacter) : fenCharacter);
+            }
+            if (emptySquareCount > 0) {
+                fen.append(emptySquareCount);
+            }
+            if (row < MAX_ROWS - 1) {
+                fen.append('/');
+            }
+        }
+
+        fen.append(' ').append((turnPlayerColor == Piece.Color.WHITE) ? 'w' : 'b').append(' ');
+        int castlingRights = getCastlingRights();
+        if (castlingRights == 0) {
+            fen.append('-');
+        } else {
+            if ((castlingRights & WHITE_CASTLE_RIGHT) != 0) {
+                fen.append('K');
+            }
+            if ((castlingRights & WHITE_CASTLE_LEFT) != 0) {
+                fen.append('Q');
+            }
+            if ((castlingRights & BLACK_CASTLE_RIGHT) != 0) {
+                fen.append('k');
+            }
+            if ((castlingRights & BLACK_CASTLE_LEFT) != 0) {
+                fen.append('q');
+            }
+        }
+
+        fen.append(' ');
+        if (enPassantTargetSquare == NO_SQUARE) {
+            fen.append('-');
+        } else {
+            fen.append((char) ('a' + enPassantTargetSquare % MAX_COLUMNS))
+                    .append(MAX_ROWS - enPassantTargetSquare / MAX_COLUMNS);
+        }
+        fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+        return fen.toString();
     }
 
-    Board getPreviousBoard() {
-        return previousBoard;
+    private static char getFenCharacter(Piece.PieceType pieceType) {
+        switch (pieceType) {
+            case PAWN:
+            case PAWN_UNMOVED:
+                return 'p';
+            case ROOK:
+            case ROOK_UNMOVED:
+                return 'r';
+            case KNIGHT:
+                return 'n';
+            case BISHOP:
+                return 'b';
+            case QUEEN:
+                return 'q';
+            default:
+                return 'k';
+        }
     }
 
-    public void setPreviousBoard(Board previousBoard) {
-        this.previousBoard = previousBoard;
+    int getEnPassantTargetSquare() {
+        return enPassantTargetSquare;
     }
 
     Piece.Color getTurnPlayerColor() {
@@ -454,7 +1293,17 @@ class Board {
     }
 
     public void setTurnPlayerColor(Piece.Color turnPlayerColor) {
+        if (this.turnPlayerColor == turnPlayerColor) {
+            return;
+        }
+        if (isEnPassantSquareHashed()) {
+            zobristKey ^= Zobrist.getEnPassantKey(enPassantTargetSquare);
+        }
         this.turnPlayerColor = turnPlayerColor;
+        zobristKey ^= Zobrist.getBlackToMoveKey();
+        if (isEnPassantSquareHashed()) {
+            zobristKey ^= Zobrist.getEnPassantKey(enPassantTargetSquare);
+        }
     }
 
     int[] getWhiteKingPosition() {
@@ -473,12 +1322,49 @@ class Board {
         this.blackKingPosition = blackKingPosition;
     }
 
+    // Two boards are equal when they hold the same position for repetition purposes: the same pieces on the same
+    // squares, the same player to move, the same castling rights and the same en passant capture available. The
+    // Zobrist key is compared first so that different positions are almost always rejected in one comparison.
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Board)) {
+            return false;
+        }
+        Board otherBoard = (Board) other;
+        if (zobristKey != otherBoard.zobristKey || turnPlayerColor != otherBoard.turnPlayerColor ||
+                getCastlingRights() != otherBoard.getCastlingRights() ||
+                isEnPassantSquareHashed() != otherBoard.isEnPassantSquareHashed() ||
+                (isEnPassantSquareHashed() && enPassantTargetSquare != otherBoard.enPassantTargetSquare)) {
+            return false;
+        }
+        // Whether a king or rook has moved only matters through the castling rights compared above, so moved and
+        // unmoved pieces are compared together
+        for (Piece.Color color : COLORS) {
+            for (Piece.PieceType pieceType : PIECE_TYPES) {
+                if (pieceType != Piece.PieceType.PAWN_UNMOVED && pieceType != Piece.PieceType.ROOK_UNMOVED &&
+                        pieceType != Piece.PieceType.KING_UNMOVED &&
+                        getPieceBitboard(color, pieceType) != otherBoard.getPieceBitboard(color, pieceType)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(zobristKey);
+    }
+
     void printBoardLayout() {
 //        for (int i = 0; i < MAX_COLUMNS; i++) {
 //            System.out.print("####");
 //        }
         System.out.println();
-        for (Piece[] currentRow : boardLayout) {
+        for (Piece[] currentRow : getBoardLayout()) {
 //            System.out.print("# ");
             for (Piece j : currentRow) {
                 if (j == null) {
@@ -495,7 +1381,17 @@ class Board {
         }
     }
 
+    // The previous position is not kept around, so it is shown by briefly unmaking the last recorded move
     void printPreviousBoardLayout() {
-        previousBoard.printBoardLayout();
+        if (undoStackSize == 0) {
+            printBoardLayout();
+            return;
+        }
+        int lastMove = (int) (undoStack[undoStackSize - 1] & MOVE_MASK);
+        Piece.Color currentTurnPlayerColor = turnPlayerColor;
+        unmakeMove();
+        printBoardLayout();
+        makeMove(lastMove);
+        setTurnPlayerColor(currentTurnPlayerColor);
     }
 }
@@ -0,0 +1,108 @@
+import java.lang.management.ManagementFactory;
+
+// Times the board operations a turn is built from over a small corpus of opening, middlegame and endgame positions,
+// reporting operations per second and bytes allocated per operation. Each measurement runs for a fixed time after a
+// warmup, so the numbers are comparable between runs on the same machine.
+// Usage: java BoardBenchmark [measurement milliseconds]
+class BoardBenchmark {
+    private static final String[] CORPUS_NAMES = {"opening", "middlegame", "endgame"};
+    private static final String[] CORPUS_FENS = {
+            "rnbqkb1r/pppp1ppp/5n2/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq -",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - -",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - -"};
+    private static final long WARMUP_NANOSECONDS = 300000000L;
+
+    private interface BoardOperation {
+        // Returns something derived from the result, so that the work cannot be optimized away
+        long run(Board board);
+    }
+
+    private static final String[] OPERATION_NAMES = {"getAllLegalBoardStates", "getPieceLegalMoves", "isCheckmate",
+            "isStalemate", "movePieceOnNewBoard", "isSquareAttackedBy"};
+    private static final BoardOperation[] OPERATIONS = {
+            board -> board.getAllLegalBoardStates().size(),
+            BoardBenchmark::getEveryPieceLegalMoves,
+            // isCheckmate and isStalemate cache their answer for the position, so the uncached search behind them is
+            // timed instead
+            board -> board.computeTerminalState() == Board.TERMINAL_STATE_CHECKMATE ? 1 : 0,
+            board -> board.computeTerminalState() == Board.TERMINAL_STATE_STALEMATE ? 1 : 0,
+            BoardBenchmark::moveEveryPieceOnNewBoards,
+            BoardBenchmark::attackEverySquare};
+
+    private static final int[] moveBuffer = new int[Move.MAX_MOVES];
+    private static long resultSink;
+
+    private static long getEveryPieceLegalMoves(Board board) {
+        long moveCount = 0;
+        for (int row = 0; row < Board.MAX_ROWS; row++) {
+            for (int column = 0; column < Board.MAX_COLUMNS; column++) {
+                if (board.isSquareOccupiedByColor(row, column, board.getTurnPlayerColor())) {
+                    moveCount += board.getPieceLegalMoves(row, column, moveBuffer);
+                }
+            }
+        }
+        return moveCount;
+    }
+
+    private static long moveEveryPieceOnNewBoards(Board board) {
+        int legalMoveCount = board.getAllPiecesLegalMoves(moveBuffer);
+        long zobristKeys = 0;
+        for (int i = 0; i < legalMoveCount; i++) {
+            zobristKeys ^= board.movePieceOnNewBoard(moveBuffer[i], board.getTurnPlayerColor()).getZobristKey();
+        }
+        return zobristKeys;
+    }
+
+    private static long attackEverySquare(Board board) {
+        long attackedSquares = 0;
+        for (int square = 0; square < Board.MAX_ROWS * Board.MAX_COLUMNS; square++) {
+            if (board.isSquareAttackedBy(square, board.getOppositeTurnPlayerColor())) {
+                attackedSquares |= 1L << square;
+            }
+        }
+        return attackedSquares;
+    }
+
+    // Runs the operation repeatedly for the given time and returns {operations, nanoseconds, allocated bytes}
+    private static long[] measure(BoardOperation operation, Board board, long targetNanoseconds) {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long operationCount = 0;
+        long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+        long startTime = System.nanoTime();
+        long elapsedNanoseconds;
+        do {
+            // Operations are timed in batches so that reading the clock does not dominate the cheap ones
+            for (int i = 0; i < 64; i++) {
+                resultSink += operation.run(board);
+            }
+            operationCount += 64;
+            elapsedNanoseconds = System.nanoTime() - startTime;
+        } while (elapsedNanoseconds < targetNanoseconds);
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+        return new long[]{operationCount, elapsedNanoseconds, allocatedBytes};
+    }
+
+    public static void main(String[] args) {
+        long measurementNanoseconds = ((args.length > 0) ? Long.parseLong(args[0]) : 1000L) * 1000000L;
+        Board[] corpus = new Board[CORPUS_FENS.length];
+        for (int i = 0; i < CORPUS_FENS.length; i++) {
+            corpus[i] = Board.fromFen(CORPUS_FENS[i]);
+        }
+
+        System.out.println(String.format("%-24s %-12s %14s %14s", "operation", "position", "ops/sec", "bytes/op"));
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            for (int j = 0; j < corpus.length; j++) {
+                measure(OPERATIONS[i], corpus[j], WARMUP_NANOSECONDS);
+                long[] measurement = measure(OPERATIONS[i], corpus[j], measurementNanoseconds);
+                long operationsPerSecond = measurement[0] * 1000000000L / measurement[1];
+                long bytesPerOperation = measurement[2] / measurement[0];
+                System.out.println(String.format("%-24s %-12s %14d %14d", OPERATION_NAMES[i], CORPUS_NAMES[j],
+                        operationsPerSecond, bytesPerOperation));
+            }
+        }
+        // Printing the sink keeps every result observable
+        System.out.println("(" + resultSink + ")");
+    }
+}
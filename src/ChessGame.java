@@ -1,17 +1,59 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
 import java.util.Scanner;
 
 class ChessGame {
     private static final int[] invalidMoveSign = new int[] {-1, -1};
+    private static final long COMPUTER_MOVE_TIME_LIMIT_MILLISECONDS = 2000;
+    private static final int TRANSPOSITION_TABLE_MEGABYTES = 64;
+    // Every finished game is appended to both files: one readable, one compact for replaying in bulk
+    private static final String GAME_RECORD_FILE = "games.pgn";
+    private static final String GAME_ARCHIVE_FILE = "games.bin";
+    // Built by OpeningBookBuilder. If it is present the computer plays from it for as long as the game stays in it.
+    private static final String OPENING_BOOK_FILE = "book.bin";
 
     private Board gameBoard = new Board();
+    private int[] legalMoveBuffer = new int[Move.MAX_MOVES];
     private Scanner playerInput = new Scanner(System.in);
     private boolean hasResigned = false;
-    private int cumulativePlysWithoutPawnsMovingOrPiecesTaken = 0;
+    // The color the computer plays, or null if both players are human
+    private Piece.Color computerColor;
+    // Kept for the whole game, so that each computer move can reuse what earlier searches found
+    private TranspositionTable transpositionTable;
+    private OpeningBook openingBook;
+    private Random openingBookRandom = new Random();
+    // The moves played so far, kept so that the game can be recorded once it ends
+    private int[] gameMoves = new int[256];
+    private int gameMoveCount = 0;
 
-    private ChessGame() {
+    private ChessGame(Piece.Color computerColor) {
         gameBoard.initializeBoardLayout();
+        this.computerColor = computerColor;
+        if (computerColor != null) {
+            transpositionTable = new TranspositionTable(TRANSPOSITION_TABLE_MEGABYTES);
+            openingBook = openOpeningBook();
+        }
+    }
+
+    private static OpeningBook openOpeningBook() {
+        Path openingBookPath = Paths.get(OPENING_BOOK_FILE);
+        if (!Files.exists(openingBookPath)) {
+            return null;
+        }
+        try {
+            return OpeningBook.open(openingBookPath);
+        } catch (IOException e) {
+            System.out.println("The opening book could not be read: " + e.getMessage());
+            return null;
+        }
     }
 
     private static void printGameStartMessage() {
@@ -40,6 +82,12 @@ class ChessGame {
             System.out.println(gameBoard.getTurnPlayerColor() + " has no legal moves.");
             System.out.println("Stalemate.");
             System.out.println("The game ends in a draw.");
+        } else if (gameBoard.isThreefoldRepetition()) {
+            System.out.println("The same position has occurred three times.");
+            System.out.println("The game ends in a draw.");
+        } else if (gameBoard.isFiftyMoveRuleDraw()) {
+            System.out.println("Fifty moves have passed without a pawn moving or a piece being taken.");
+            System.out.println("The game ends in a draw.");
         } else if (hasResigned) {
             System.out.println(opponentColor + " wins by resignation.");
         }
@@ -50,6 +98,10 @@ class ChessGame {
         while (!isGameFinished()) {
             printGameBoard();
 
+            if (gameBoard.getTurnPlayerColor() == computerColor) {
+                makeComputerMove();
+                continue;
+            }
             while (true) {
                 int[] pieceCoordinates = selectPieceToMove();
                 if (Arrays.equals(pieceCoordinates, invalidMoveSign)) {
@@ -61,13 +113,76 @@ class ChessGame {
                     printGameBoard();
                     continue;
                 }
-                gameBoard = gameBoard.movePieceOnNewBoard(pieceCoordinates[0], pieceCoordinates[1], targetCoordinates[0],
-                        targetCoordinates[1], gameBoard.getTurnPlayerColor());
+                int move = gameBoard.findLegalMove(pieceCoordinates[0], pieceCoordinates[1], targetCoordinates[0],
+                        targetCoordinates[1]);
+                recordMove(move);
+                gameBoard = gameBoard.movePieceOnNewBoard(move, gameBoard.getTurnPlayerColor());
                 break;
             }
             gameBoard.setTurnPlayerColor(gameBoard.getOppositeTurnPlayerColor());
         }
         printGameEndMessage();
+        saveGameRecord();
+    }
+
+    private void makeComputerMove() {
+        if (openingBook != null) {
+            int bookMove = openingBook.chooseMove(gameBoard, openingBookRandom);
+            if (bookMove != Move.NO_MOVE) {
+                System.out.println(computerColor + " moves " + Move.toString(bookMove) + " from the opening book.");
+                recordMove(bookMove);
+                gameBoard = gameBoard.movePieceOnNewBoard(bookMove, gameBoard.getTurnPlayerColor());
+                gameBoard.setTurnPlayerColor(gameBoard.getOppositeTurnPlayerColor());
+                return;
+            }
+        }
+        ParallelSearch search = new ParallelSearch(gameBoard, transpositionTable,
+                Runtime.getRuntime().availableProcessors());
+        int bestMove = search.findBestMove(COMPUTER_MOVE_TIME_LIMIT_MILLISECONDS, 0, 0);
+        System.out.println(computerColor + " moves " + Move.toString(bestMove) + ".");
+        recordMove(bestMove);
+        gameBoard = gameBoard.movePieceOnNewBoard(bestMove, gameBoard.getTurnPlayerColor());
+        gameBoard.setTurnPlayerColor(gameBoard.getOppositeTurnPlayerColor());
+    }
+
+    private void recordMove(int move) {
+        if (gameMoveCount == gameMoves.length) {
+            gameMoves = Arrays.copyOf(gameMoves, gameMoves.length * 2);
+        }
+        gameMoves[gameMoveCount++] = move;
+    }
+
+    private String getGameResult() {
+        if (gameBoard.isCheckmate() || hasResigned) {
+            return (gameBoard.getTurnPlayerColor() == Piece.Color.WHITE) ?
+                    PgnReader.RESULT_BLACK_WINS : PgnReader.RESULT_WHITE_WINS;
+        } else if (gameBoard.isStalemate() || gameBoard.isThreefoldRepetition() || gameBoard.isFiftyMoveRuleDraw()) {
+            return PgnReader.RESULT_DRAW;
+        }
+        return PgnReader.RESULT_UNKNOWN;
+    }
+
+    private String getPlayerName(Piece.Color color) {
+        return (color == computerColor) ? "Basic Chess" : "Player";
+    }
+
+    private void saveGameRecord() {
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("Event", "Basic Chess game");
+        tags.put("Site", "?");
+        tags.put("Date", LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd")));
+        tags.put("Round", "-");
+        tags.put("White", getPlayerName(Piece.Color.WHITE));
+        tags.put("Black", getPlayerName(Piece.Color.BLACK));
+        tags.put("Result", getGameResult());
+        try (PgnWriter pgnWriter = PgnWriter.openForAppending(Paths.get(GAME_RECORD_FILE));
+             GameArchiveWriter archiveWriter = GameArchiveWriter.openForAppending(Paths.get(GAME_ARCHIVE_FILE))) {
+            pgnWriter.writeGame(tags, gameMoves, gameMoveCount);
+            archiveWriter.writeGame(null, gameMoves, gameMoveCount, tags.get("Result"));
+            System.out.println("The game has been saved to " + GAME_RECORD_FILE + " and " + GAME_ARCHIVE_FILE + ".");
+        } catch (IOException e) {
+            System.out.println("The game could not be saved: " + e.getMessage());
+        }
     }
 
     private int[] selectPieceToMove() {
@@ -146,9 +261,10 @@ class ChessGame {
     }
 
     private boolean targetSquareIsLegalMove(int currentRow, int currentColumn, int[] targetCoordinates) {
-        List<int[]> allLegalMoves = gameBoard.getPieceLegalMoves(currentRow, currentColumn);
-        for (int[] currentMove : allLegalMoves) {
-            if (Arrays.equals(targetCoordinates, currentMove)) {
+        int legalMoveCount = gameBoard.getPieceLegalMoves(currentRow, currentColumn, legalMoveBuffer);
+        int targetSquare = Board.getSquareIndex(targetCoordinates[0], targetCoordinates[1]);
+        for (int i = 0; i < legalMoveCount; i++) {
+            if (Move.getTargetSquare(legalMoveBuffer[i]) == targetSquare) {
                 return true;
             }
         }
@@ -157,11 +273,17 @@ class ChessGame {
     }
 
     private boolean isGameFinished() {
-        return (hasResigned || gameBoard.isCheckmate() || gameBoard.isStalemate());
+        return (hasResigned || gameBoard.isCheckmate() || gameBoard.isStalemate() ||
+                gameBoard.isThreefoldRepetition() || gameBoard.isFiftyMoveRuleDraw());
     }
 
+    // Passing "white" or "black" as an argument has the computer play that color
     public static void main(String[] args) {
-        ChessGame game = new ChessGame();
+        Piece.Color computerColor = null;
+        if (args.length > 0) {
+            computerColor = Piece.Color.valueOf(args[0].toUpperCase());
+        }
+        ChessGame game = new ChessGame(computerColor);
         printGameStartMessage();
         game.playerInput.nextLine();
         game.playGame();
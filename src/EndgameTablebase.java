@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// The result of every position of one endgame, such as KRK, read from a memory-mapped file. A position is indexed by
+// the side to move and then the square of every piece: the white king, the black king, then the other pieces in the
+// order of the endgame's name. Each entry holds 0 for a draw, or the distance to mate in plies plus one, packed into
+// as few bits as the table's longest mate needs.
+// File layout, little-endian: int magic, int bits per entry, long entry count, then the entries as one bit stream,
+// padded so that any entry can be read with a single long.
+final class EndgameTablebase {
+    static final int MAGIC = 0x42435442;
+    private static final int HEADER_BYTES = 16;
+    private static final int PADDING_BYTES = Long.BYTES;
+    private static final int SQUARE_BITS = 6;
+
+    private final String name;
+    private final int pieceCount;
+    private final ByteBuffer entries;
+    private final int bitsPerEntry;
+    private final long entryMask;
+
+    private EndgameTablebase(String name, int pieceCount, ByteBuffer entries) throws IOException {
+        this.name = name;
+        this.pieceCount = pieceCount;
+        this.entries = entries;
+        if (entries.getInt(0) != MAGIC) {
+            throw new IOException("The file is not a tablebase: " + name);
+        }
+        bitsPerEntry = entries.getInt(4);
+        long entryCount = entries.getLong(8);
+        if (bitsPerEntry < 1 || bitsPerEntry > Byte.SIZE || entryCount != getPositionCount(pieceCount) ||
+                entries.capacity() < HEADER_BYTES + (entryCount * bitsPerEntry + 7) / 8 + PADDING_BYTES) {
+            throw new IOException("The tablebase file does not match its endgame: " + name);
+        }
+        entryMask = (1L << bitsPerEntry) - 1;
+    }
+
+    // The piece count includes both kings
+    static EndgameTablebase open(Path path, String name, int pieceCount) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            return new EndgameTablebase(name, pieceCount, entries);
+        }
+    }
+
+    static int getPositionCount(int pieceCount) {
+        return 2 << (SQUARE_BITS * pieceCount);
+    }
+
+    // The squares are given in the table's own piece order, and side to move is 0 for white and 1 for black
+    static int getIndex(int sideToMove, int[] squares, int pieceCount) {
+        int index = sideToMove;
+        for (int i = 0; i < pieceCount; i++) {
+            index = (index << SQUARE_BITS) | squares[i];
+        }
+        return index;
+    }
+
+    int getResult(int index) {
+        long bitIndex = (long) index * bitsPerEntry;
+        int byteOffset = HEADER_BYTES + (int) (bitIndex >>> 3);
+        return (int) ((entries.getLong(byteOffset) >>> (bitIndex & 7)) & entryMask);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getPieceCount() {
+        return pieceCount;
+    }
+
+    // Packs the results into as few bits each as the largest needs, writing them through one small reused buffer
+    static void write(Path path, byte[] results) throws IOException {
+        int maxResult = 1;
+        for (byte result : results) {
+            maxResult = Math.max(maxResult, result & 0xFF);
+        }
+        int bitsPerEntry = Integer.SIZE - Integer.numberOfLeadingZeros(maxResult);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.putInt(MAGIC).putInt(bitsPerEntry).putLong(results.length);
+            long word = 0;
+            int wordBits = 0;
+            for (byte result : results) {
+                word |= (long) (result & 0xFF) << wordBits;
+                wordBits += bitsPerEntry;
+                if (wordBits >= Long.SIZE) {
+                    putLong(channel, buffer, word);
+                    wordBits -= Long.SIZE;
+                    // The bits of this result that did not fit start the next word
+                    word = (wordBits > 0) ? (long) (result & 0xFF) >>> (bitsPerEntry - wordBits) : 0;
+                }
+            }
+            putLong(channel, buffer, word);
+            putLong(channel, buffer, 0);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static void putLong(FileChannel channel, ByteBuffer buffer, long word) throws IOException {
+        if (buffer.remaining() < Long.BYTES) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        buffer.putLong(word);
+    }
+}
@@ -0,0 +1,321 @@
+// Static evaluation of a position in centipawns, from the point of view of the player whose turn it is.
+// Each piece is worth its material value plus a bonus for its square, with one set of values for the middlegame and
+// one for the endgame. The board keeps running totals of both as pieces are placed and removed, along with a game
+// phase that falls from MAX_GAME_PHASE to 0 as pieces are traded, and the final score blends the two totals by that
+// phase. Mobility and pawn structure are added at evaluation time, since they depend on the whole position.
+final class Evaluation {
+    static final int PAWN_VALUE = 100;
+    static final int KNIGHT_VALUE = 320;
+    static final int BISHOP_VALUE = 330;
+    static final int ROOK_VALUE = 500;
+    static final int QUEEN_VALUE = 900;
+    static final int MAX_GAME_PHASE = 24;
+
+    private static final Piece.Color[] COLORS = Piece.Color.values();
+    private static final Piece.PieceType[] PIECE_TYPES = Piece.PieceType.values();
+    private static final int SQUARE_COUNT = Board.MAX_ROWS * Board.MAX_COLUMNS;
+
+    // Indexed by Piece.PieceType ordinal
+    private static final int[] MIDDLEGAME_MATERIAL_VALUES = {82, 82, 477, 477, 337, 365, 1025, 0, 0};
+    private static final int[] ENDGAME_MATERIAL_VALUES = {94, 94, 512, 512, 281, 297, 936, 0, 0};
+    private static final int[] GAME_PHASE_WEIGHTS = {0, 0, 2, 2, 1, 1, 4, 0, 0};
+
+    // Square bonuses for white pieces, laid out as the board is printed, so row 0 is the row white promotes on.
+    // Black's bonuses are the same tables flipped from top to bottom.
+    private static final int[] PAWN_MIDDLEGAME_SQUARE_VALUES = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            50, 50, 50, 50, 50, 50, 50, 50,
+            10, 10, 20, 30, 30, 20, 10, 10,
+            5, 5, 10, 25, 25, 10, 5, 5,
+            0, 0, 0, 20, 20, 0, 0, 0,
+            5, -5, -10, 0, 0, -10, -5, 5,
+            5, 10, 10, -20, -20, 10, 10, 5,
+            0, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] PAWN_ENDGAME_SQUARE_VALUES = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            80, 80, 80, 80, 80, 80, 80, 80,
+            50, 50, 50, 50, 50, 50, 50, 50,
+            30, 30, 30, 30, 30, 30, 30, 30,
+            15, 15, 15, 15, 15, 15, 15, 15,
+            5, 5, 5, 5, 5, 5, 5, 5,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] KNIGHT_SQUARE_VALUES = {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20, 0, 0, 0, 0, -20, -40,
+            -30, 0, 10, 15, 15, 10, 0, -30,
+            -30, 5, 15, 20, 20, 15, 5, -30,
+            -30, 0, 15, 20, 20, 15, 0, -30,
+            -30, 5, 10, 15, 15, 10, 5, -30,
+            -40, -20, 0, 5, 5, 0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50};
+    private static final int[] BISHOP_SQUARE_VALUES = {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 10, 10, 5, 0, -10,
+            -10, 5, 5, 10, 10, 5, 5, -10,
+            -10, 0, 10, 10, 10, 10, 0, -10,
+            -10, 10, 10, 10, 10, 10, 10, -10,
+            -10, 5, 0, 0, 0, 0, 5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20};
+    private static final int[] ROOK_SQUARE_VALUES = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            5, 10, 10, 10, 10, 10, 10, 5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            0, 0, 0, 5, 5, 0, 0, 0};
+    private static final int[] QUEEN_SQUARE_VALUES = {
+            -20, -10, -10, -5, -5, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 5, 5, 5, 0, -10,
+            -5, 0, 5, 5, 5, 5, 0, -5,
+            0, 0, 5, 5, 5, 5, 0, -5,
+            -10, 5, 5, 5, 5, 5, 0, -10,
+            -10, 0, 5, 0, 0, 0, 0, -10,
+            -20, -10, -10, -5, -5, -10, -10, -20};
+    // The king hides behind its pawns while there are pieces about, and heads for the centre once they are gone
+    private static final int[] KING_MIDDLEGAME_SQUARE_VALUES = {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+            20, 20, 0, 0, 0, 0, 20, 20,
+            20, 30, 10, 0, 0, 10, 30, 20};
+    private static final int[] KING_ENDGAME_SQUARE_VALUES = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10, 0, 0, -10, -20, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -30, 0, 0, 0, 0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50};
+
+    // Material plus square bonus, indexed by (color ordinal * piece type count + piece type ordinal), then by square.
+    // Black's values are negated, so that the board's running totals are always white's score minus black's.
+    private static final int[][] MIDDLEGAME_VALUES = new int[COLORS.length * PIECE_TYPES.length][SQUARE_COUNT];
+    private static final int[][] ENDGAME_VALUES = new int[COLORS.length * PIECE_TYPES.length][SQUARE_COUNT];
+
+    // Bonuses per square a piece attacks that is not occupied by its own side, indexed by Piece.PieceType ordinal
+    private static final int[] MIDDLEGAME_MOBILITY_WEIGHTS = {0, 0, 2, 2, 4, 5, 1, 0, 0};
+    private static final int[] ENDGAME_MOBILITY_WEIGHTS = {0, 0, 4, 4, 4, 5, 2, 0, 0};
+    private static final int DOUBLED_PAWN_MIDDLEGAME_PENALTY = 10;
+    private static final int DOUBLED_PAWN_ENDGAME_PENALTY = 20;
+    private static final int ISOLATED_PAWN_MIDDLEGAME_PENALTY = 10;
+    private static final int ISOLATED_PAWN_ENDGAME_PENALTY = 15;
+    // Indexed by the number of rows a passed pawn still has to go to promote
+    private static final int[] PASSED_PAWN_MIDDLEGAME_BONUSES = {0, 60, 40, 25, 15, 10, 5, 0};
+    private static final int[] PASSED_PAWN_ENDGAME_BONUSES = {0, 120, 80, 50, 30, 20, 10, 0};
+
+    private static final long[] COLUMN_MASKS = new long[Board.MAX_COLUMNS];
+    private static final long[] ADJACENT_COLUMN_MASKS = new long[Board.MAX_COLUMNS];
+    // The squares in front of a pawn on its own and adjacent columns, which must hold no opponent pawns for it to be
+    // passed. Indexed by Piece.Color ordinal, then by square.
+    private static final long[][] PASSED_PAWN_MASKS = new long[COLORS.length][SQUARE_COUNT];
+
+    static {
+        for (Piece.Color color : COLORS) {
+            for (Piece.PieceType pieceType : PIECE_TYPES) {
+                int pieceIndex = color.ordinal() * PIECE_TYPES.length + pieceType.ordinal();
+                for (int square = 0; square < SQUARE_COUNT; square++) {
+                    // Flipping the row turns a black square into the white square with the same meaning
+                    int whiteSquare = (color == Piece.Color.WHITE) ? square :
+                            (Board.MAX_ROWS - 1 - square / Board.MAX_COLUMNS) * Board.MAX_COLUMNS +
+                                    square % Board.MAX_COLUMNS;
+                    int sign = (color == Piece.Color.WHITE) ? 1 : -1;
+                    MIDDLEGAME_VALUES[pieceIndex][square] = sign * (MIDDLEGAME_MATERIAL_VALUES[pieceType.ordinal()] +
+                            getMiddlegameSquareValues(pieceType)[whiteSquare]);
+                    ENDGAME_VALUES[pieceIndex][square] = sign * (ENDGAME_MATERIAL_VALUES[pieceType.ordinal()] +
+                            getEndgameSquareValues(pieceType)[whiteSquare]);
+                }
+            }
+        }
+
+        for (int column = 0; column < Board.MAX_COLUMNS; column++) {
+            for (int row = 0; row < Board.MAX_ROWS; row++) {
+                COLUMN_MASKS[column] |= Board.getSquareBit(row, column);
+            }
+        }
+        for (int column = 0; column < Board.MAX_COLUMNS; column++) {
+            ADJACENT_COLUMN_MASKS[column] = ((column > 0) ? COLUMN_MASKS[column - 1] : 0L) |
+                    ((column < Board.MAX_COLUMNS - 1) ? COLUMN_MASKS[column + 1] : 0L);
+        }
+        for (int square = 0; square < SQUARE_COUNT; square++) {
+            int row = square / Board.MAX_COLUMNS;
+            int column = square % Board.MAX_COLUMNS;
+            long frontSpan = COLUMN_MASKS[column] | ADJACENT_COLUMN_MASKS[column];
+            for (int otherRow = 0; otherRow < Board.MAX_ROWS; otherRow++) {
+                long rowSquares = 0xFFL << (otherRow * Board.MAX_COLUMNS);
+                if (otherRow < row) {
+                    PASSED_PAWN_MASKS[Piece.Color.WHITE.ordinal()][square] |= frontSpan & rowSquares;
+                } else if (otherRow > row) {
+                    PASSED_PAWN_MASKS[Piece.Color.BLACK.ordinal()][square] |= frontSpan & rowSquares;
+                }
+            }
+        }
+    }
+
+    private Evaluation() {
+    }
+
+    private static int[] getMiddlegameSquareValues(Piece.PieceType pieceType) {
+        switch (pieceType) {
+            case PAWN:
+            case PAWN_UNMOVED:
+                return PAWN_MIDDLEGAME_SQUARE_VALUES;
+            case ROOK:
+            case ROOK_UNMOVED:
+                return ROOK_SQUARE_VALUES;
+            case KNIGHT:
+                return KNIGHT_SQUARE_VALUES;
+            case BISHOP:
+                return BISHOP_SQUARE_VALUES;
+            case QUEEN:
+                return QUEEN_SQUARE_VALUES;
+            default:
+                return KING_MIDDLEGAME_SQUARE_VALUES;
+        }
+    }
+
+    private static int[] getEndgameSquareValues(Piece.PieceType pieceType) {
+        switch (pieceType) {
+            case PAWN:
+            case PAWN_UNMOVED:
+                return PAWN_ENDGAME_SQUARE_VALUES;
+            case KING:
+            case KING_UNMOVED:
+                return KING_ENDGAME_SQUARE_VALUES;
+            default:
+                return getMiddlegameSquareValues(pieceType);
+        }
+    }
+
+    // The amounts a piece adds to the board's running totals, negative for black pieces
+    static int getMiddlegameValue(Piece.Color color, Piece.PieceType pieceType, int square) {
+        return MIDDLEGAME_VALUES[color.ordinal() * PIECE_TYPES.length + pieceType.ordinal()][square];
+    }
+
+    static int getEndgameValue(Piece.Color color, Piece.PieceType pieceType, int square) {
+        return ENDGAME_VALUES[color.ordinal() * PIECE_TYPES.length + pieceType.ordinal()][square];
+    }
+
+    static int getGamePhaseWeight(Piece.PieceType pieceType) {
+        return GAME_PHASE_WEIGHTS[pieceType.ordinal()];
+    }
+
+    static int evaluate(Board board) {
+        int positionalScore = getMobilityScore(board, Piece.Color.WHITE) - getMobilityScore(board, Piece.Color.BLACK) +
+                getPawnStructureScore(board, Piece.Color.WHITE) - getPawnStructureScore(board, Piece.Color.BLACK);
+        int middlegameScore = board.getMiddlegameScore() + getMiddlegamePart(positionalScore);
+        int endgameScore = board.getEndgameScore() + getEndgamePart(positionalScore);
+
+        // Promotions can push the phase past its starting value
+        int gamePhase = Math.min(board.getGamePhase(), MAX_GAME_PHASE);
+        int whiteScore = (middlegameScore * gamePhase + endgameScore * (MAX_GAME_PHASE - gamePhase)) / MAX_GAME_PHASE;
+        return (board.getTurnPlayerColor() == Piece.Color.WHITE) ? whiteScore : -whiteScore;
+    }
+
+    // The positional terms carry their middlegame and endgame parts packed into one int, the middlegame part in the
+    // upper 16 bits, so that they can be added and subtracted together without allocating
+    private static int makeScore(int middlegameScore, int endgameScore) {
+        return (middlegameScore << 16) + endgameScore;
+    }
+
+    private static int getMiddlegamePart(int score) {
+        return (score + 0x8000) >> 16;
+    }
+
+    private static int getEndgamePart(int score) {
+        return (short) score;
+    }
+
+    private static int getMobilityScore(Board board, Piece.Color color) {
+        int score = 0;
+        long occupiedSquares = board.getOccupiedSquares();
+        long reachableSquares = ~board.getColorBitboard(color);
+        long pieces = board.getColorBitboard(color) & ~board.getPieceBitboard(color, Piece.PieceType.PAWN) &
+                ~board.getPieceBitboard(color, Piece.PieceType.KING);
+        while (pieces != 0) {
+            int square = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            Piece.PieceType pieceType = board.getPieceTypeAt(square / Board.MAX_COLUMNS, square % Board.MAX_COLUMNS);
+            long attackedSquares;
+            switch (pieceType) {
+                case KNIGHT:
+                    attackedSquares = AttackTables.getKnightAttacks(square);
+                    break;
+                case BISHOP:
+                    attackedSquares = AttackTables.getBishopAttacks(square, occupiedSquares);
+                    break;
+                case QUEEN:
+                    attackedSquares = AttackTables.getQueenAttacks(square, occupiedSquares);
+                    break;
+                default:
+                    attackedSquares = AttackTables.getRookAttacks(square, occupiedSquares);
+                    break;
+            }
+            int mobility = Long.bitCount(attackedSquares & reachableSquares);
+            score += makeScore(mobility * MIDDLEGAME_MOBILITY_WEIGHTS[pieceType.ordinal()],
+                    mobility * ENDGAME_MOBILITY_WEIGHTS[pieceType.ordinal()]);
+        }
+        return score;
+    }
+
+    private static int getPawnStructureScore(Board board, Piece.Color color) {
+        int score = 0;
+        Piece.Color opponentColor = (color == Piece.Color.WHITE) ? Piece.Color.BLACK : Piece.Color.WHITE;
+        long pawns = board.getPieceBitboard(color, Piece.PieceType.PAWN);
+        long opponentPawns = board.getPieceBitboard(opponentColor, Piece.PieceType.PAWN);
+
+        for (int column = 0; column < Board.MAX_COLUMNS; column++) {
+            int columnPawnCount = Long.bitCount(pawns & COLUMN_MASKS[column]);
+            if (columnPawnCount > 1) {
+                score -= makeScore((columnPawnCount - 1) * DOUBLED_PAWN_MIDDLEGAME_PENALTY,
+                        (columnPawnCount - 1) * DOUBLED_PAWN_ENDGAME_PENALTY);
+            }
+            if (columnPawnCount > 0 && (pawns & ADJACENT_COLUMN_MASKS[column]) == 0) {
+                score -= makeScore(columnPawnCount * ISOLATED_PAWN_MIDDLEGAME_PENALTY,
+                        columnPawnCount * ISOLATED_PAWN_ENDGAME_PENALTY);
+            }
+        }
+
+        long remainingPawns = pawns;
+        while (remainingPawns != 0) {
+            int square = Long.numberOfTrailingZeros(remainingPawns);
+            remainingPawns &= remainingPawns - 1;
+            if ((PASSED_PAWN_MASKS[color.ordinal()][square] & opponentPawns) == 0) {
+                int row = square / Board.MAX_COLUMNS;
+                int rowsToPromotion = (color == Piece.Color.WHITE) ? row : Board.MAX_ROWS - 1 - row;
+                score += makeScore(PASSED_PAWN_MIDDLEGAME_BONUSES[rowsToPromotion],
+                        PASSED_PAWN_ENDGAME_BONUSES[rowsToPromotion]);
+            }
+        }
+        return score;
+    }
+
+    // The value of a piece type, with unmoved pawns and rooks worth the same as moved ones and the king worth nothing
+    // since it can never be taken
+    static int getPieceValue(Piece.PieceType pieceType) {
+        switch (pieceType) {
+            case PAWN:
+            case PAWN_UNMOVED:
+                return PAWN_VALUE;
+            case KNIGHT:
+                return KNIGHT_VALUE;
+            case BISHOP:
+                return BISHOP_VALUE;
+            case ROOK:
+            case ROOK_UNMOVED:
+                return ROOK_VALUE;
+            case QUEEN:
+                return QUEEN_VALUE;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Reads a binary archive of games, as written by GameArchiveWriter, through memory-mapped buffers. Finding a game is
+// one read of the index, and each move is two bytes decoded in place, so any game can be replayed to any ply without
+// parsing text or reading the games before it.
+// File layout, big-endian:
+//     header: int magic, int version, long game count, long index offset
+//     games:  byte result, byte start FEN length (0 for the standard starting position), the FEN in ASCII,
+//             unsigned short ply count, then one unsigned short per move
+//     index:  one long per game, the file offset of its record
+// Usage: java GameArchive <archive> [game number] [ply]
+class GameArchive implements Closeable {
+    static final int MAGIC = 0x42434741;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+    static final int MAX_PLIES = 0xFFFF;
+    static final int MAX_FEN_LENGTH = 0xFF;
+    static final int MAX_GAME_RECORD_BYTES = 4 + MAX_FEN_LENGTH + 2 * MAX_PLIES;
+
+    static final int RESULT_UNKNOWN = 0;
+    static final int RESULT_WHITE_WINS = 1;
+    static final int RESULT_BLACK_WINS = 2;
+    static final int RESULT_DRAW = 3;
+
+    // Packed move layout: bits 0-5 current square, 6-11 target square, 12-14 kind. Kinds 4 to 7 are promotions to the
+    // pieces of Piece.PROMOTION_PIECE_TYPES in order.
+    private static final int PACKED_TARGET_SQUARE_SHIFT = 6;
+    private static final int PACKED_KIND_SHIFT = 12;
+    private static final int PACKED_SQUARE_MASK = 0x3F;
+    private static final int KIND_NORMAL = 0;
+    private static final int KIND_DOUBLE_PAWN_PUSH = 1;
+    private static final int KIND_CASTLE = 2;
+    private static final int KIND_EN_PASSANT = 3;
+    private static final int KIND_PROMOTION = 4;
+
+    // Mappings are limited to 2GB, so larger archives are mapped in segments. Each segment's mapping runs on past the
+    // start of the next by the largest record, so that any record or index entry lies within a single mapping.
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_OFFSET_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long gameCount;
+    private final long indexOffset;
+
+    private GameArchive(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long fileSize = channel.size();
+        if (fileSize < HEADER_BYTES) {
+            throw new IOException("The file is too short to be a game archive");
+        }
+        segments = new MappedByteBuffer[(int) (((fileSize - 1) >>> SEGMENT_SHIFT) + 1)];
+        for (int i = 0; i < segments.length; i++) {
+            long segmentStart = (long) i << SEGMENT_SHIFT;
+            long segmentSize = Math.min((1L << SEGMENT_SHIFT) + MAX_GAME_RECORD_BYTES, fileSize - segmentStart);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentSize);
+        }
+        if (segments[0].getInt(0) != MAGIC || segments[0].getInt(4) != VERSION) {
+            throw new IOException("The file is not a version " + VERSION + " game archive");
+        }
+        gameCount = segments[0].getLong(8);
+        indexOffset = segments[0].getLong(16);
+        if (indexOffset < HEADER_BYTES || indexOffset + gameCount * Long.BYTES > fileSize) {
+            throw new IOException("The game archive's index lies outside the file");
+        }
+    }
+
+    static GameArchive open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new GameArchive(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long getGameCount() {
+        return gameCount;
+    }
+
+    int getPlyCount(long gameIndex) {
+        long recordOffset = getRecordOffset(gameIndex);
+        return getUnsignedShort(getMovesOffset(recordOffset) - 2);
+    }
+
+    int getResult(long gameIndex) {
+        return getByte(getRecordOffset(gameIndex));
+    }
+
+    // Returns the game's starting position, or null if it started from the standard one
+    String getStartFen(long gameIndex) {
+        long recordOffset = getRecordOffset(gameIndex);
+        int fenLength = getByte(recordOffset + 1);
+        if (fenLength == 0) {
+            return null;
+        }
+        byte[] fenBytes = new byte[fenLength];
+        ByteBuffer segment = getSegment(recordOffset + 2).duplicate();
+        segment.position(getSegmentOffset(recordOffset + 2));
+        segment.get(fenBytes);
+        return new String(fenBytes, StandardCharsets.US_ASCII);
+    }
+
+    int getMove(long gameIndex, int ply) {
+        long movesOffset = getMovesOffset(getRecordOffset(gameIndex));
+        if (ply < 0 || ply >= getUnsignedShort(movesOffset - 2)) {
+            throw new IndexOutOfBoundsException("Game " + gameIndex + " has no ply " + ply);
+        }
+        return unpackMove(getUnsignedShort(movesOffset + 2L * ply));
+    }
+
+    // Sets the board to the game's position after its first plyCount moves. The board's history covers only those
+    // moves, so repetitions and the fifty-move rule are judged as they were in the game.
+    void replayGame(long gameIndex, int plyCount, Board board) {
+        long recordOffset = getRecordOffset(gameIndex);
+        long movesOffset = getMovesOffset(recordOffset);
+        if (plyCount < 0 || plyCount > getUnsignedShort(movesOffset - 2)) {
+            throw new IndexOutOfBoundsException("Game " + gameIndex + " has no ply " + plyCount);
+        }
+        String startFen = getStartFen(gameIndex);
+        if (startFen == null) {
+            board.initializeBoardLayout();
+        } else {
+            board.loadFen(startFen);
+        }
+        ByteBuffer segment = getSegment(movesOffset);
+        int moveOffset = getSegmentOffset(movesOffset);
+        for (int i = 0; i < plyCount; i++) {
+            board.makeMove(unpackMove(segment.getChar(moveOffset + 2 * i)));
+        }
+    }
+
+    private long getRecordOffset(long gameIndex) {
+        if (gameIndex < 0 || gameIndex >= gameCount) {
+            throw new IndexOutOfBoundsException("The archive has no game " + gameIndex);
+        }
+        long indexEntryOffset = indexOffset + gameIndex * Long.BYTES;
+        return getSegment(indexEntryOffset).getLong(getSegmentOffset(indexEntryOffset));
+    }
+
+    private long getMovesOffset(long recordOffset) {
+        return recordOffset + 4 + getByte(recordOffset + 1);
+    }
+
+    private int getByte(long offset) {
+        return getSegment(offset).get(getSegmentOffset(offset)) & 0xFF;
+    }
+
+    private int getUnsignedShort(long offset) {
+        return getSegment(offset).getChar(getSegmentOffset(offset));
+    }
+
+    private ByteBuffer getSegment(long offset) {
+        return segments[(int) (offset >>> SEGMENT_SHIFT)];
+    }
+
+    private static int getSegmentOffset(long offset) {
+        return (int) (offset & SEGMENT_OFFSET_MASK);
+    }
+
+    static int packMove(int move) {
+        int kind = KIND_NORMAL;
+        if (Move.hasFlag(move, Move.FLAG_PROMOTION)) {
+            Piece.PieceType promotionPieceType = Move.getPromotionPieceType(move);
+            for (int i = 0; i < Piece.PROMOTION_PIECE_TYPES.length; i++) {
+                if (Piece.PROMOTION_PIECE_TYPES[i] == promotionPieceType) {
+                    kind = KIND_PROMOTION + i;
+                }
+            }
+        } else if (Move.hasFlag(move, Move.FLAG_DOUBLE_PAWN_PUSH)) {
+            kind = KIND_DOUBLE_PAWN_PUSH;
+        } else if (Move.hasFlag(move, Move.FLAG_CASTLE)) {
+            kind = KIND_CASTLE;
+        } else if (Move.hasFlag(move, Move.FLAG_EN_PASSANT)) {
+            kind = KIND_EN_PASSANT;
+        }
+        return Move.getCurrentSquare(move) | (Move.getTargetSquare(move) << PACKED_TARGET_SQUARE_SHIFT) |
+                (kind << PACKED_KIND_SHIFT);
+    }
+
+    static int unpackMove(int packedMove) {
+        int currentSquare = packedMove & PACKED_SQUARE_MASK;
+        int targetSquare = (packedMove >>> PACKED_TARGET_SQUARE_SHIFT) & PACKED_SQUARE_MASK;
+        int kind = packedMove >>> PACKED_KIND_SHIFT;
+        switch (kind) {
+            case KIND_NORMAL:
+                return Move.encode(currentSquare, targetSquare, 0);
+            case KIND_DOUBLE_PAWN_PUSH:
+                return Move.encode(currentSquare, targetSquare, Move.FLAG_DOUBLE_PAWN_PUSH);
+            case KIND_CASTLE:
+                return Move.encode(currentSquare, targetSquare, Move.FLAG_CASTLE);
+            case KIND_EN_PASSANT:
+                return Move.encode(currentSquare, targetSquare, Move.FLAG_EN_PASSANT);
+            default:
+                return Move.encodePromotion(currentSquare, targetSquare,
+                        Piece.PROMOTION_PIECE_TYPES[kind - KIND_PROMOTION]);
+        }
+    }
+
+    static int getResultCode(String pgnResult) {
+        switch (pgnResult) {
+            case PgnReader.RESULT_WHITE_WINS:
+                return RESULT_WHITE_WINS;
+            case PgnReader.RESULT_BLACK_WINS:
+                return RESULT_BLACK_WINS;
+            case PgnReader.RESULT_DRAW:
+                return RESULT_DRAW;
+            default:
+                return RESULT_UNKNOWN;
+        }
+    }
+
+    static String getPgnResult(int resultCode) {
+        switch (resultCode) {
+            case RESULT_WHITE_WINS:
+                return PgnReader.RESULT_WHITE_WINS;
+            case RESULT_BLACK_WINS:
+                return PgnReader.RESULT_BLACK_WINS;
+            case RESULT_DRAW:
+                return PgnReader.RESULT_DRAW;
+            default:
+                return PgnReader.RESULT_UNKNOWN;
+        }
+    }
+
+    // The mappings stay valid until they are garbage collected, since Java offers no way to unmap them sooner
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Prints the position of one game after the given ply, or replays every game to its end and reports the speed
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java GameArchive <archive> [game number] [ply]");
+            return;
+        }
+        Board board = new Board();
+        try (GameArchive archive = GameArchive.open(Paths.get(args[0]))) {
+            if (args.length > 1) {
+                long gameIndex = Long.parseLong(args[1]) - 1;
+                int plyCount = (args.length > 2) ? Integer.parseInt(args[2]) : archive.getPlyCount(gameIndex);
+                archive.replayGame(gameIndex, plyCount, board);
+                board.printBoardLayout();
+                System.out.println(board.toFen());
+                System.out.println("Result: " + getPgnResult(archive.getResult(gameIndex)));
+                return;
+            }
+
+            long moveCount = 0;
+            long startTime = System.nanoTime();
+            for (long i = 0; i < archive.getGameCount(); i++) {
+                int plyCount = archive.getPlyCount(i);
+                archive.replayGame(i, plyCount, board);
+                moveCount += plyCount;
+            }
+            long elapsedNanoseconds = Math.max(1, System.nanoTime() - startTime);
+            System.out.println(String.format("%d games, %d moves replayed in %d ms (%d moves/sec)",
+                    archive.getGameCount(), moveCount, elapsedNanoseconds / 1000000L,
+                    moveCount * 1000000000L / elapsedNanoseconds));
+        }
+    }
+}
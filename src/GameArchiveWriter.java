@@ -0,0 +1,170 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Appends games to a binary archive in the layout GameArchive reads. Records are written through one reused buffer,
+// and the index of every game's offset is kept in memory and written after the last game when the writer is closed.
+// An existing archive's index is read back on opening and the new games overwrite it, so the archive is only
+// complete again once the writer has been closed.
+// Usage: java GameArchiveWriter <file.pgn> <archive> converts a PGN file, appending its games to the archive
+class GameArchiveWriter implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(1 << 16);
+    private long[] gameOffsets;
+    private int gameCount;
+    // The file offset at which the writeBuffer's contents will be written
+    private long writePosition;
+
+    private GameArchiveWriter(FileChannel channel) throws IOException {
+        this.channel = channel;
+        if (channel.size() == 0) {
+            gameOffsets = new long[1024];
+            writePosition = GameArchive.HEADER_BYTES;
+            return;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(GameArchive.HEADER_BYTES);
+        readFully(header, 0);
+        if (header.getInt(0) != GameArchive.MAGIC || header.getInt(4) != GameArchive.VERSION) {
+            throw new IOException("The file is not a version " + GameArchive.VERSION + " game archive");
+        }
+        long existingGameCount = header.getLong(8);
+        long indexOffset = header.getLong(16);
+        if (existingGameCount > Integer.MAX_VALUE - 8 || indexOffset < GameArchive.HEADER_BYTES ||
+                indexOffset + existingGameCount * Long.BYTES > channel.size()) {
+            throw new IOException("The game archive's index lies outside the file");
+        }
+        gameCount = (int) existingGameCount;
+        gameOffsets = new long[Math.max(1024, gameCount * 2)];
+        ByteBuffer index = ByteBuffer.allocate(gameCount * Long.BYTES);
+        readFully(index, indexOffset);
+        index.asLongBuffer().get(gameOffsets, 0, gameCount);
+        writePosition = indexOffset;
+    }
+
+    static GameArchiveWriter openForAppending(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            return new GameArchiveWriter(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // The start FEN is null for a game from the standard starting position. The result is one of the PgnReader
+    // result strings.
+    void writeGame(String startFen, int[] moves, int moveCount, String result) throws IOException {
+        int fenLength = (startFen == null) ? 0 : startFen.length();
+        if (fenLength > GameArchive.MAX_FEN_LENGTH || moveCount > GameArchive.MAX_PLIES) {
+            throw new IllegalArgumentException("A game archive record holds at most " + GameArchive.MAX_PLIES +
+                    " moves and a FEN of " + GameArchive.MAX_FEN_LENGTH + " characters");
+        }
+        if (gameCount == gameOffsets.length) {
+            gameOffsets = Arrays.copyOf(gameOffsets, gameOffsets.length * 2);
+        }
+        gameOffsets[gameCount++] = writePosition + writeBuffer.position();
+
+        ensureBufferSpace(4 + fenLength);
+        writeBuffer.put((byte) GameArchive.getResultCode(result));
+        writeBuffer.put((byte) fenLength);
+        if (startFen != null) {
+            writeBuffer.put(startFen.getBytes(StandardCharsets.US_ASCII));
+        }
+        writeBuffer.putChar((char) moveCount);
+        for (int i = 0; i < moveCount; i++) {
+            ensureBufferSpace(2);
+            writeBuffer.putChar((char) GameArchive.packMove(moves[i]));
+        }
+    }
+
+    int getGameCount() {
+        return gameCount;
+    }
+
+    private void ensureBufferSpace(int byteCount) throws IOException {
+        if (writeBuffer.remaining() < byteCount) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            writePosition += channel.write(writeBuffer, writePosition);
+        }
+        writeBuffer.clear();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, position + buffer.position());
+            if (bytesRead < 0) {
+                throw new IOException("The game archive ends unexpectedly");
+            }
+        }
+        buffer.flip();
+    }
+
+    // Writes the index after the last game, then the header pointing to it
+    @Override
+    public void close() throws IOException {
+        try {
+            long indexOffset = writePosition + writeBuffer.position();
+            for (int i = 0; i < gameCount; i++) {
+                ensureBufferSpace(Long.BYTES);
+                writeBuffer.putLong(gameOffsets[i]);
+            }
+            flushBuffer();
+            channel.truncate(writePosition);
+
+            writeBuffer.putInt(GameArchive.MAGIC).putInt(GameArchive.VERSION).putLong(gameCount).putLong(indexOffset);
+            writeBuffer.flip();
+            long headerPosition = 0;
+            while (writeBuffer.hasRemaining()) {
+                headerPosition += channel.write(writeBuffer, headerPosition);
+            }
+            writeBuffer.clear();
+        } finally {
+            channel.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java GameArchiveWriter <file.pgn> <archive>");
+            return;
+        }
+        int[] moves = new int[GameArchive.MAX_PLIES];
+        long skippedGameCount = 0;
+        try (PgnReader pgnReader = PgnReader.open(Paths.get(args[0]));
+             GameArchiveWriter archiveWriter = GameArchiveWriter.openForAppending(Paths.get(args[1]))) {
+            while (true) {
+                try {
+                    if (!pgnReader.nextGame()) {
+                        break;
+                    }
+                    String startFen = pgnReader.getTag("FEN");
+                    int moveCount = 0;
+                    int move;
+                    while ((move = pgnReader.nextMove()) != Move.NO_MOVE && moveCount < moves.length) {
+                        moves[moveCount++] = move;
+                    }
+                    archiveWriter.writeGame(startFen, moves, moveCount, pgnReader.getResult());
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Skipped: " + e.getMessage());
+                    skippedGameCount++;
+                }
+            }
+            System.out.println("The archive holds " + archiveWriter.getGameCount() + " games, " + skippedGameCount +
+                    " skipped.");
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import java.util.Arrays;
+
+// Plays one game between two players with no input or output, so that many games can be played at once. The game
+// ends on checkmate, stalemate, threefold repetition or the fifty-move rule, when a player answers with an illegal
+// move, which forfeits the game, or unfinished once it reaches a ply limit. A position found in a loaded endgame
+// tablebase ends the game with the tablebase's result, since playing it out could only lose that result by mistake.
+class HeadlessGame {
+    enum Termination {
+        CHECKMATE, STALEMATE, THREEFOLD_REPETITION, FIFTY_MOVE_RULE, TABLEBASE, ILLEGAL_MOVE, PLY_LIMIT
+    }
+
+    private final Player whitePlayer;
+    private final Player blackPlayer;
+    private final String startFen;
+    private final int maxPlies;
+    private final Board board = new Board();
+    private final int[] legalMoveBuffer = new int[Move.MAX_MOVES];
+    private int[] moves = new int[256];
+    private int moveCount;
+    private String result;
+    private Termination termination;
+
+    // A null start FEN starts the game from the standard starting position
+    HeadlessGame(Player whitePlayer, Player blackPlayer, String startFen, int maxPlies) {
+        this.whitePlayer = whitePlayer;
+        this.blackPlayer = blackPlayer;
+        this.startFen = startFen;
+        this.maxPlies = maxPlies;
+    }
+
+    // Plays the game to its end and returns its result, one of the PgnReader result strings
+    String play() {
+        if (startFen == null) {
+            board.initializeBoardLayout();
+        } else {
+            board.loadFen(startFen);
+        }
+        moveCount = 0;
+        whitePlayer.startGame();
+        blackPlayer.startGame();
+
+        while (true) {
+            termination = getTermination(board);
+            if (termination != null) {
+                break;
+            }
+            if (moveCount >= maxPlies) {
+                termination = Termination.PLY_LIMIT;
+                break;
+            }
+            Player turnPlayer = (board.getTurnPlayerColor() == Piece.Color.WHITE) ? whitePlayer : blackPlayer;
+            int move = turnPlayer.chooseMove(board);
+            if (!isLegalMove(move)) {
+                termination = Termination.ILLEGAL_MOVE;
+                break;
+            }
+            if (moveCount == moves.length) {
+                moves = Arrays.copyOf(moves, moves.length * 2);
+            }
+            moves[moveCount++] = move;
+            board.makeMove(move);
+        }
+
+        int tablebaseResult = (termination == Termination.TABLEBASE) ? board.probeTablebase() : Tablebases.DRAW;
+        if (termination == Termination.CHECKMATE || termination == Termination.ILLEGAL_MOVE ||
+                Tablebases.isLoss(tablebaseResult)) {
+            // Either way the player to move has lost
+            result = (board.getTurnPlayerColor() == Piece.Color.WHITE) ?
+                    PgnReader.RESULT_BLACK_WINS : PgnReader.RESULT_WHITE_WINS;
+        } else if (Tablebases.isWin(tablebaseResult)) {
+            result = (board.getTurnPlayerColor() == Piece.Color.WHITE) ?
+                    PgnReader.RESULT_WHITE_WINS : PgnReader.RESULT_BLACK_WINS;
+        } else if (termination == Termination.PLY_LIMIT) {
+            result = PgnReader.RESULT_UNKNOWN;
+        } else {
+            result = PgnReader.RESULT_DRAW;
+        }
+        return result;
+    }
+
+    // Returns how the game has ended in this position, or null if it goes on
+    static Termination getTermination(Board board) {
+        if (board.isCheckmate()) {
+            return Termination.CHECKMATE;
+        } else if (board.isStalemate()) {
+            return Termination.STALEMATE;
+        } else if (board.isThreefoldRepetition()) {
+            return Termination.THREEFOLD_REPETITION;
+        } else if (board.isFiftyMoveRuleDraw()) {
+            return Termination.FIFTY_MOVE_RULE;
+        } else if (board.probeTablebase() != Tablebases.NOT_FOUND) {
+            return Termination.TABLEBASE;
+        }
+        return null;
+    }
+
+    private boolean isLegalMove(int move) {
+        int legalMoveCount = board.getAllPiecesLegalMoves(legalMoveBuffer);
+        for (int i = 0; i < legalMoveCount; i++) {
+            if (legalMoveBuffer[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    Player getWhitePlayer() {
+        return whitePlayer;
+    }
+
+    Player getBlackPlayer() {
+        return blackPlayer;
+    }
+
+    String getStartFen() {
+        return startFen;
+    }
+
+    String getResult() {
+        return result;
+    }
+
+    Termination getTermination() {
+        return termination;
+    }
+
+    // The moves are only valid until the game is played again
+    int[] getMoves() {
+        return moves;
+    }
+
+    int getMoveCount() {
+        return moveCount;
+    }
+
+    Board getBoard() {
+        return board;
+    }
+}
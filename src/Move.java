@@ -0,0 +1,67 @@
+// Moves are packed into a single int so that move lists can live in preallocated int[] buffers:
+// bits 0-5 hold the current square, bits 6-11 the target square, bits 12-15 the flags and bits 16-19 the piece type
+// a pawn promotes to. Squares are numbered (row * Board.MAX_COLUMNS + column), matching the board's bitboards.
+final class Move {
+    static final int NO_MOVE = 0;
+    static final int MAX_MOVES = 256;
+
+    static final int FLAG_DOUBLE_PAWN_PUSH = 1;
+    static final int FLAG_CASTLE = 2;
+    static final int FLAG_EN_PASSANT = 4;
+    static final int FLAG_PROMOTION = 8;
+
+    private static final int TARGET_SQUARE_SHIFT = 6;
+    private static final int FLAGS_SHIFT = 12;
+    private static final int PROMOTION_PIECE_SHIFT = 16;
+    private static final int SQUARE_MASK = 0x3F;
+    private static final int FLAGS_MASK = 0xF;
+    private static final int PIECE_TYPE_MASK = 0xF;
+
+    private static final Piece.PieceType[] PIECE_TYPES = Piece.PieceType.values();
+
+    private Move() {
+    }
+
+    static int encode(int currentSquare, int targetSquare, int flags) {
+        return currentSquare | (targetSquare << TARGET_SQUARE_SHIFT) | (flags << FLAGS_SHIFT);
+    }
+
+    static int encodePromotion(int currentSquare, int targetSquare, Piece.PieceType promotionPieceType) {
+        return encode(currentSquare, targetSquare, FLAG_PROMOTION) |
+                (promotionPieceType.ordinal() << PROMOTION_PIECE_SHIFT);
+    }
+
+    static int getCurrentSquare(int move) {
+        return move & SQUARE_MASK;
+    }
+
+    static int getTargetSquare(int move) {
+        return (move >>> TARGET_SQUARE_SHIFT) & SQUARE_MASK;
+    }
+
+    static int getFlags(int move) {
+        return (move >>> FLAGS_SHIFT) & FLAGS_MASK;
+    }
+
+    static boolean hasFlag(int move, int flag) {
+        return (getFlags(move) & flag) != 0;
+    }
+
+    static Piece.PieceType getPromotionPieceType(int move) {
+        if (!hasFlag(move, FLAG_PROMOTION)) {
+            return null;
+        }
+        return PIECE_TYPES[(move >>> PROMOTION_PIECE_SHIFT) & PIECE_TYPE_MASK];
+    }
+
+    static String toString(int move) {
+        int currentSquare = getCurrentSquare(move);
+        int targetSquare = getTargetSquare(move);
+        String moveString = (currentSquare / Board.MAX_COLUMNS) + "," + (currentSquare % Board.MAX_COLUMNS) + " -> " +
+                (targetSquare / Board.MAX_COLUMNS) + "," + (targetSquare % Board.MAX_COLUMNS);
+        if (hasFlag(move, FLAG_PROMOTION)) {
+            moveString += " " + getPromotionPieceType(move);
+        }
+        return moveString;
+    }
+}
@@ -0,0 +1,163 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+// Looks up moves for known positions in a book file, so that well-known openings are played without searching. The
+// file is memory-mapped and binary-searched, so a lookup reads a handful of entries and allocates nothing.
+// Entries follow the Polyglot layout: 16 bytes each, big-endian, sorted by unsigned key, holding a long position key,
+// a short move, a short weight and an int that is left unused. Moves are encoded the Polyglot way, with castling
+// written as the king taking its own rook. The keys are Polyglot's too, from PolyglotZobrist rather than the engine's
+// own Zobrist keys, so Polyglot books from elsewhere can be read and books built by OpeningBookBuilder can be used by
+// other programs.
+final class OpeningBook implements Closeable {
+    static final int ENTRY_BYTES = 16;
+    static final int MAX_WEIGHT = 0xFFFF;
+
+    // Book move layout: bits 0-2 target column, 3-5 target rank, 6-8 current column, 9-11 current rank, 12-14
+    // promotion piece
+    private static final int BOOK_TARGET_RANK_SHIFT = 3;
+    private static final int BOOK_CURRENT_COLUMN_SHIFT = 6;
+    private static final int BOOK_CURRENT_RANK_SHIFT = 9;
+    private static final int BOOK_PROMOTION_SHIFT = 12;
+    private static final int BOOK_COORDINATE_MASK = 0x7;
+    // Indexed by the promotion bits; zero means no promotion
+    private static final Piece.PieceType[] BOOK_PROMOTION_PIECE_TYPES = {null, Piece.PieceType.KNIGHT,
+            Piece.PieceType.BISHOP, Piece.PieceType.ROOK, Piece.PieceType.QUEEN};
+
+    private final FileChannel channel;
+    private final MappedByteBuffer entries;
+    private final int entryCount;
+    private final int[] legalMoveBuffer = new int[Move.MAX_MOVES];
+    private final int[] legalBookMoveBuffer = new int[Move.MAX_MOVES];
+    private final int[] bookMoveBuffer = new int[Move.MAX_MOVES];
+    private final int[] weightBuffer = new int[Move.MAX_MOVES];
+
+    private OpeningBook(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long fileSize = channel.size();
+        if (fileSize % ENTRY_BYTES != 0 || fileSize > Integer.MAX_VALUE) {
+            throw new IOException("The file is not an opening book of " + ENTRY_BYTES + "-byte entries under 2GB");
+        }
+        entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        entryCount = (int) (fileSize / ENTRY_BYTES);
+    }
+
+    static OpeningBook open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new OpeningBook(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    // Fills the buffers with the legal book moves for the position and their weights, returning how many there are.
+    // Entries whose move is not legal in the position, which can only come from a key collision, are left out. Not
+    // safe to call from several threads at once, since the book keeps its own move buffers.
+    int getBookMoves(Board board, int[] moves, int[] weights) {
+        long polyglotKey = PolyglotZobrist.getKey(board);
+        int legalMoveCount = -1;
+        int bookMoveCount = 0;
+        for (int i = findFirstEntry(polyglotKey); i < entryCount && getEntryKey(i) == polyglotKey; i++) {
+            // The legal moves are only generated, and encoded for comparison, once a position is found in the book
+            if (legalMoveCount < 0) {
+                legalMoveCount = board.getAllPiecesLegalMoves(legalMoveBuffer);
+                for (int j = 0; j < legalMoveCount; j++) {
+                    legalBookMoveBuffer[j] = toBookMove(legalMoveBuffer[j]);
+                }
+            }
+            int bookMove = entries.getChar(i * ENTRY_BYTES + 8);
+            for (int j = 0; j < legalMoveCount; j++) {
+                if (legalBookMoveBuffer[j] == bookMove && bookMoveCount < moves.length) {
+                    moves[bookMoveCount] = legalMoveBuffer[j];
+                    weights[bookMoveCount++] = entries.getChar(i * ENTRY_BYTES + 10);
+                    break;
+                }
+            }
+        }
+        return bookMoveCount;
+    }
+
+    // Picks one of the position's book moves with probability in proportion to its weight, or returns Move.NO_MOVE if
+    // the position is not in the book
+    int chooseMove(Board board, Random random) {
+        int bookMoveCount = getBookMoves(board, bookMoveBuffer, weightBuffer);
+        int totalWeight = 0;
+        for (int i = 0; i < bookMoveCount; i++) {
+            totalWeight += weightBuffer[i];
+        }
+        if (totalWeight == 0) {
+            return Move.NO_MOVE;
+        }
+        int choice = random.nextInt(totalWeight);
+        for (int i = 0; i < bookMoveCount; i++) {
+            choice -= weightBuffer[i];
+            if (choice < 0) {
+                return bookMoveBuffer[i];
+            }
+        }
+        return Move.NO_MOVE;
+    }
+
+    // Returns the index of the first entry whose key is not below the given key
+    private int findFirstEntry(long polyglotKey) {
+        int low = 0;
+        int high = entryCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(getEntryKey(middle), polyglotKey) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long getEntryKey(int entryIndex) {
+        return entries.getLong(entryIndex * ENTRY_BYTES);
+    }
+
+    static int toBookMove(int move) {
+        int currentSquare = Move.getCurrentSquare(move);
+        int targetSquare = Move.getTargetSquare(move);
+        if (Move.hasFlag(move, Move.FLAG_CASTLE)) {
+            // The king's target is given as the square of the rook it castles with
+            int rookColumn = (targetSquare > currentSquare) ? Board.MAX_COLUMNS - 1 : 0;
+            targetSquare = (targetSquare / Board.MAX_COLUMNS) * Board.MAX_COLUMNS + rookColumn;
+        }
+        int bookMove = getBookColumn(targetSquare) | (getBookRank(targetSquare) << BOOK_TARGET_RANK_SHIFT) |
+                (getBookColumn(currentSquare) << BOOK_CURRENT_COLUMN_SHIFT) |
+                (getBookRank(currentSquare) << BOOK_CURRENT_RANK_SHIFT);
+        Piece.PieceType promotionPieceType = Move.getPromotionPieceType(move);
+        for (int i = 1; i < BOOK_PROMOTION_PIECE_TYPES.length; i++) {
+            if (BOOK_PROMOTION_PIECE_TYPES[i] == promotionPieceType) {
+                bookMove |= i << BOOK_PROMOTION_SHIFT;
+            }
+        }
+        return bookMove;
+    }
+
+    private static int getBookColumn(int square) {
+        return square % Board.MAX_COLUMNS;
+    }
+
+    // Book ranks count up from white's side of the board, where board rows count down from black's
+    private static int getBookRank(int square) {
+        return (Board.MAX_ROWS - 1 - square / Board.MAX_COLUMNS) & BOOK_COORDINATE_MASK;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,238 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+// Compiles an opening book from a PGN game collection. Every move played in the first plies of a game is recorded
+// against the position it was played from, scoring 2 for a win by the player who made it, 1 for a draw or an
+// unknown result and 0 for a loss. A move's weight is its total score, and moves played too rarely or that only ever
+// lost are left out.
+// Occurrences are collected in flat arrays and periodically sorted and merged, so memory grows with the number of
+// distinct position and move pairs rather than with the number of games.
+// Usage: java OpeningBookBuilder <games.pgn> <book> [max plies] [min games]
+class OpeningBookBuilder {
+    private static final int DEFAULT_MAX_PLIES = 20;
+    private static final int DEFAULT_MIN_GAMES = 2;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    // Each record is a position key and a packed value: bits 48-63 the book move, 24-47 the number of games and 0-23
+    // the total score. Counts saturate rather than overflow.
+    private static final int VALUE_MOVE_SHIFT = 48;
+    private static final int VALUE_COUNT_SHIFT = 24;
+    private static final long VALUE_FIELD_MASK = 0xFFFFFFL;
+
+    private final int maxPlies;
+    private final int minGames;
+    private long[] keys = new long[1 << 16];
+    private long[] values = new long[1 << 16];
+    private int recordCount;
+
+    OpeningBookBuilder(int maxPlies, int minGames) {
+        this.maxPlies = maxPlies;
+        this.minGames = minGames;
+    }
+
+    // Returns the number of games added, skipping any with an illegal move
+    long addGames(PgnReader pgnReader) throws IOException {
+        long gameCount = 0;
+        int[] moves = new int[maxPlies];
+        long[] moveKeys = new long[maxPlies];
+        while (true) {
+            int moveCount = 0;
+            try {
+                if (!pgnReader.nextGame()) {
+                    break;
+                }
+                // Games from a set-up position are left out, since the book is for play from the starting position
+                if (pgnReader.getTag("FEN") != null) {
+                    continue;
+                }
+                while (moveCount < maxPlies) {
+                    moveKeys[moveCount] = PolyglotZobrist.getKey(pgnReader.getBoard());
+                    int move = pgnReader.nextMove();
+                    if (move == Move.NO_MOVE) {
+                        break;
+                    }
+                    moves[moveCount++] = move;
+                }
+                // The result follows the moves, so the rest of the game has to be read to find it
+                while (pgnReader.nextMove() != Move.NO_MOVE) {
+                    // Moves past the book's depth are not recorded
+                }
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+
+            String result = pgnReader.getResult();
+            for (int i = 0; i < moveCount; i++) {
+                // White makes the even plies of a game from the starting position
+                boolean isWhiteMove = i % 2 == 0;
+                int score;
+                if (result.equals(PgnReader.RESULT_WHITE_WINS)) {
+                    score = isWhiteMove ? 2 : 0;
+                } else if (result.equals(PgnReader.RESULT_BLACK_WINS)) {
+                    score = isWhiteMove ? 0 : 2;
+                } else {
+                    score = 1;
+                }
+                addRecord(moveKeys[i], OpeningBook.toBookMove(moves[i]), 1, score);
+            }
+            gameCount++;
+        }
+        return gameCount;
+    }
+
+    private void addRecord(long key, int bookMove, long count, long score) {
+        if (recordCount == keys.length) {
+            mergeRecords();
+            // Only grow if merging did not free at least half of the space
+            if (recordCount > keys.length / 2) {
+                keys = Arrays.copyOf(keys, keys.length * 2);
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+        }
+        keys[recordCount] = key;
+        values[recordCount++] = ((long) bookMove << VALUE_MOVE_SHIFT) | (count << VALUE_COUNT_SHIFT) | score;
+    }
+
+    // Sorts the records by key and move, then combines those for the same key and move into one
+    private void mergeRecords() {
+        sortRecords(0, recordCount - 1);
+        int mergedCount = 0;
+        for (int i = 0; i < recordCount; i++) {
+            if (mergedCount > 0 && keys[mergedCount - 1] == keys[i] &&
+                    getMove(values[mergedCount - 1]) == getMove(values[i])) {
+                long count = Math.min(VALUE_FIELD_MASK, getCount(values[mergedCount - 1]) + getCount(values[i]));
+                long score = Math.min(VALUE_FIELD_MASK, getScore(values[mergedCount - 1]) + getScore(values[i]));
+                values[mergedCount - 1] = ((long) getMove(values[i]) << VALUE_MOVE_SHIFT) |
+                        (count << VALUE_COUNT_SHIFT) | score;
+            } else {
+                keys[mergedCount] = keys[i];
+                values[mergedCount++] = values[i];
+            }
+        }
+        recordCount = mergedCount;
+    }
+
+    // A quicksort on the two arrays together. Hoare partitioning keeps runs of equal keys, such as the starting
+    // position that every game shares, from degrading it.
+    private void sortRecords(int low, int high) {
+        while (high - low > INSERTION_SORT_THRESHOLD) {
+            int middle = (low + high) >>> 1;
+            long pivotKey = keys[middle];
+            int pivotMove = getMove(values[middle]);
+            int i = low - 1;
+            int j = high + 1;
+            while (true) {
+                do {
+                    i++;
+                } while (compareRecords(i, pivotKey, pivotMove) < 0);
+                do {
+                    j--;
+                } while (compareRecords(j, pivotKey, pivotMove) > 0);
+                if (i >= j) {
+                    break;
+                }
+                swapRecords(i, j);
+            }
+            // Recurse into the smaller part and loop on the larger, keeping the stack shallow
+            if (j - low < high - j) {
+                sortRecords(low, j);
+                low = j + 1;
+            } else {
+                sortRecords(j + 1, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compareRecords(j - 1, keys[j], getMove(values[j])) > 0; j--) {
+                swapRecords(j - 1, j);
+            }
+        }
+    }
+
+    private int compareRecords(int index, long key, int bookMove) {
+        int keyComparison = Long.compareUnsigned(keys[index], key);
+        return (keyComparison != 0) ? keyComparison : Integer.compare(getMove(values[index]), bookMove);
+    }
+
+    private void swapRecords(int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    private static int getMove(long value) {
+        return (int) (value >>> VALUE_MOVE_SHIFT);
+    }
+
+    private static long getCount(long value) {
+        return (value >>> VALUE_COUNT_SHIFT) & VALUE_FIELD_MASK;
+    }
+
+    private static long getScore(long value) {
+        return value & VALUE_FIELD_MASK;
+    }
+
+    // Writes the book and returns its entry count. A position whose weights exceed what an entry can hold has them
+    // all scaled down together, keeping their proportions.
+    int write(Path path) throws IOException {
+        mergeRecords();
+        int entryCount = 0;
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            int positionStart = 0;
+            while (positionStart < recordCount) {
+                int positionEnd = positionStart;
+                long maxScore = 0;
+                while (positionEnd < recordCount && keys[positionEnd] == keys[positionStart]) {
+                    if (isRecordKept(values[positionEnd])) {
+                        maxScore = Math.max(maxScore, getScore(values[positionEnd]));
+                    }
+                    positionEnd++;
+                }
+                for (int i = positionStart; i < positionEnd; i++) {
+                    if (!isRecordKept(values[i])) {
+                        continue;
+                    }
+                    long weight = getScore(values[i]);
+                    if (maxScore > OpeningBook.MAX_WEIGHT) {
+                        weight = Math.max(1, weight * OpeningBook.MAX_WEIGHT / maxScore);
+                    }
+                    output.writeLong(keys[i]);
+                    output.writeShort(getMove(values[i]));
+                    output.writeShort((int) weight);
+                    output.writeInt(0);
+                    entryCount++;
+                }
+                positionStart = positionEnd;
+            }
+        }
+        return entryCount;
+    }
+
+    private boolean isRecordKept(long value) {
+        return getCount(value) >= minGames && getScore(value) > 0;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java OpeningBookBuilder <games.pgn> <book> [max plies] [min games]");
+            return;
+        }
+        int maxPlies = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_MAX_PLIES;
+        int minGames = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_MIN_GAMES;
+        OpeningBookBuilder builder = new OpeningBookBuilder(maxPlies, minGames);
+        long gameCount;
+        try (PgnReader pgnReader = PgnReader.open(Paths.get(args[0]))) {
+            gameCount = builder.addGames(pgnReader);
+        }
+        int entryCount = builder.write(Paths.get(args[1]));
+        System.out.println("Built a book of " + entryCount + " entries from " + gameCount + " games.");
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.function.Consumer;
+
+// Runs several searches of the same position at once, one per thread, sharing a single transposition table ("Lazy
+// SMP"). The threads never talk to each other directly: each searches its own copy of the board, since a Board must
+// stay on one thread, and what one thread learns reaches the others through the table, so the extra threads mostly
+// fill it with results the main thread can then skip. Half of the helper threads start a ply deeper to spread the
+// threads out further.
+// The move returned is the one from whichever thread completed the deepest iteration, preferring the main thread.
+class ParallelSearch {
+    private static final int MAIN_THREAD_INDEX = 0;
+
+    private final TranspositionTable transpositionTable;
+    private final Search[] searches;
+
+    ParallelSearch(Board board, TranspositionTable transpositionTable, int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("A parallel search needs at least one thread");
+        }
+        this.transpositionTable = transpositionTable;
+        searches = new Search[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            searches[i] = new Search(board, transpositionTable);
+            searches[i].setFirstDepth(1 + (i % 2));
+        }
+    }
+
+    // The limits are those of Search.findBestMove, with the node limit applying to each thread separately
+    int findBestMove(long timeLimitMilliseconds, long nodeLimit, int maxDepth) {
+        transpositionTable.incrementAge();
+        Thread[] helperThreads = new Thread[searches.length];
+        for (int i = 0; i < searches.length; i++) {
+            if (i == MAIN_THREAD_INDEX) {
+                continue;
+            }
+            Search helperSearch = searches[i];
+            helperThreads[i] = new Thread(() -> helperSearch.findBestMove(timeLimitMilliseconds, nodeLimit, maxDepth),
+                    "search-helper-" + i);
+            helperThreads[i].setDaemon(true);
+            helperThreads[i].start();
+        }
+
+        searches[MAIN_THREAD_INDEX].findBestMove(timeLimitMilliseconds, nodeLimit, maxDepth);
+        for (int i = 0; i < searches.length; i++) {
+            if (i != MAIN_THREAD_INDEX) {
+                stopAndJoin(searches[i], helperThreads[i]);
+            }
+        }
+
+        int bestSearchIndex = MAIN_THREAD_INDEX;
+        for (int i = 0; i < searches.length; i++) {
+            if (searches[i].getCompletedDepth() > searches[bestSearchIndex].getCompletedDepth()) {
+                bestSearchIndex = i;
+            }
+        }
+        int[] principalVariation = searches[bestSearchIndex].getPrincipalVariation();
+        return (principalVariation.length > 0) ? principalVariation[0] : Move.NO_MOVE;
+    }
+
+    // A helper may not have reached its own search loop yet when the main thread finishes, and starting a search
+    // clears its stop request, so the request is repeated until the thread has actually finished
+    private void stopAndJoin(Search search, Thread thread) {
+        boolean wasInterrupted = false;
+        while (thread.isAlive()) {
+            search.stop();
+            try {
+                thread.join(1);
+            } catch (InterruptedException e) {
+                wasInterrupted = true;
+            }
+        }
+        if (wasInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Asks every thread to stop, usually from a thread other than the one that called findBestMove
+    void stop() {
+        for (Search search : searches) {
+            search.stop();
+        }
+    }
+
+    // Reports each iteration the main thread completes, as Search.setIterationListener does
+    void setIterationListener(Consumer<Search> iterationListener) {
+        searches[MAIN_THREAD_INDEX].setIterationListener(iterationListener);
+    }
+
+    // While the search runs, the other threads' counts may lag slightly behind, since they are read without locking
+    long[] getNodeCountsPerThread() {
+        long[] nodeCounts = new long[searches.length];
+        for (int i = 0; i < searches.length; i++) {
+            nodeCounts[i] = searches[i].getNodeCount();
+        }
+        return nodeCounts;
+    }
+
+    long getTotalNodeCount() {
+        long totalNodeCount = 0;
+        for (Search search : searches) {
+            totalNodeCount += search.getNodeCount();
+        }
+        return totalNodeCount;
+    }
+}
@@ -0,0 +1,108 @@
+// Counts the leaf nodes of the legal move tree to a fixed depth. The counts for the positions below are well known, so
+// any difference points at a move generation bug, usually in castling, en passant or promotion.
+// Usage: java Perft <depth> [position name] [divide]
+class Perft {
+    private static final String[] POSITION_NAMES = {"start", "kiwipete", "endgame", "position4", "promotion",
+            "middlegame"};
+    private static final String[] POSITION_FENS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq -",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq -",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - -",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq -",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ -",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - -"};
+    // Indexed by position, then by depth - 1
+    private static final long[][] REFERENCE_NODE_COUNTS = {
+            {20, 400, 8902, 197281, 4865609, 119060324},
+            {48, 2039, 97862, 4085603, 193690690},
+            {14, 191, 2812, 43238, 674624, 11030083},
+            {6, 264, 9467, 422333, 15833292},
+            {44, 1486, 62379, 2103487, 89941194},
+            {46, 2079, 89890, 3894594, 164075551}};
+
+    private final int[][] moveBuffers;
+
+    private Perft(int maxDepth) {
+        moveBuffers = new int[maxDepth + 1][Move.MAX_MOVES];
+    }
+
+    // Moves are made and unmade in place, with one preallocated buffer per ply, so counting allocates nothing
+    long countLeafNodes(Board board, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moveBuffer = moveBuffers[depth];
+        int moveCount = board.getAllPiecesLegalMoves(moveBuffer);
+        if (depth == 1) {
+            return moveCount;
+        }
+        long leafNodes = 0;
+        for (int i = 0; i < moveCount; i++) {
+            board.makeMove(moveBuffer[i]);
+            leafNodes += countLeafNodes(board, depth - 1);
+            board.unmakeMove();
+        }
+        return leafNodes;
+    }
+
+    // Prints the leaf nodes below each root move, which narrows a wrong total down to the move whose subtree is wrong
+    long divide(Board board, int depth) {
+        int[] moveBuffer = new int[Move.MAX_MOVES];
+        int moveCount = board.getAllPiecesLegalMoves(moveBuffer);
+        long leafNodes = 0;
+        for (int i = 0; i < moveCount; i++) {
+            board.makeMove(moveBuffer[i]);
+            long moveLeafNodes = countLeafNodes(board, depth - 1);
+            board.unmakeMove();
+            System.out.println(Move.toString(moveBuffer[i]) + ": " + moveLeafNodes);
+            leafNodes += moveLeafNodes;
+        }
+        System.out.println("Moves: " + moveCount);
+        return leafNodes;
+    }
+
+    public static void main(String[] args) {
+        int depth = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+        if (depth < 1) {
+            throw new IllegalArgumentException("Perft depth must be at least 1");
+        }
+        String selectedPositionName = (args.length > 1) ? args[1] : null;
+        boolean isDividing = args.length > 2 && args[2].equals("divide");
+        Perft perft = new Perft(depth);
+        boolean allCountsMatch = true;
+        long totalLeafNodes = 0;
+        long totalNanoseconds = 0;
+        // Generating moves once builds the attack tables, so their one-off setup is not counted in the timings
+        Board.fromFen(POSITION_FENS[0]).getAllPiecesLegalMoves(new int[Move.MAX_MOVES]);
+
+        for (int i = 0; i < POSITION_NAMES.length; i++) {
+            if (selectedPositionName != null && !selectedPositionName.equals(POSITION_NAMES[i])) {
+                continue;
+            }
+            Board board = Board.fromFen(POSITION_FENS[i]);
+            long startTime = System.nanoTime();
+            long leafNodes = isDividing ? perft.divide(board, depth) : perft.countLeafNodes(board, depth);
+            long elapsedNanoseconds = System.nanoTime() - startTime;
+            totalLeafNodes += leafNodes;
+            totalNanoseconds += elapsedNanoseconds;
+
+            String result;
+            if (depth > REFERENCE_NODE_COUNTS[i].length) {
+                result = "no reference count";
+            } else if (leafNodes == REFERENCE_NODE_COUNTS[i][depth - 1]) {
+                result = "ok";
+            } else {
+                result = "MISMATCH, expected " + REFERENCE_NODE_COUNTS[i][depth - 1];
+                allCountsMatch = false;
+            }
+            System.out.println(POSITION_NAMES[i] + " depth " + depth + ": " + leafNodes + " nodes in " +
+                    (elapsedNanoseconds / 1000000) + " ms (" + result + ")");
+        }
+
+        System.out.println("Total: " + totalLeafNodes + " nodes, " +
+                (totalLeafNodes * 1000000000L / Math.max(1, totalNanoseconds)) + " nodes per second");
+        if (!allCountsMatch) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+// Reads games from a PGN file one at a time and replays their moves on a single board, so that a database of millions
+// of games is processed in memory bounded by its longest game rather than by the file. Input is read in large blocks
+// and each token is parsed where it lies, and the board is moved forward with makeMove rather than copied each ply.
+// Comments, variations, numeric annotations and escape lines are skipped.
+// A caller reads a game at a time:
+//     while (reader.nextGame()) { while (reader.nextMove() != Move.NO_MOVE) { ... reader.getBoard() ... } }
+// Usage: java PgnReader <file.pgn>
+class PgnReader implements Closeable {
+    // PGN is specified as Latin-1. Decoding as Latin-1 also never fails on other encodings, and only tag values, which
+    // are never parsed, can hold anything but ASCII.
+    static final Charset PGN_CHARSET = StandardCharsets.ISO_8859_1;
+
+    static final String RESULT_WHITE_WINS = "1-0";
+    static final String RESULT_BLACK_WINS = "0-1";
+    static final String RESULT_DRAW = "1/2-1/2";
+    static final String RESULT_UNKNOWN = "*";
+
+    private static final int END_OF_INPUT = -1;
+    private static final int TOKEN_MOVE = 0;
+    private static final int TOKEN_END_OF_GAME = 1;
+
+    private final Reader reader;
+    private final char[] inputBuffer = new char[1 << 16];
+    private int inputLength;
+    private int inputIndex;
+    private int previousCharacter = '\n';
+    private long lineNumber = 1;
+
+    private final StringBuilder token = new StringBuilder(16);
+    private final Map<String, String> tags = new HashMap<>();
+    private final Board board = new Board();
+    private final int[] moveBuffer = new int[Move.MAX_MOVES];
+    // True from the end of a game's tags until its result or the start of the next game
+    private boolean isInMoveText;
+    private String result = RESULT_UNKNOWN;
+    private long gameNumber;
+
+    PgnReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    static PgnReader open(Path path) throws IOException {
+        return new PgnReader(Files.newBufferedReader(path, PGN_CHARSET));
+    }
+
+    // Moves to the next game, skipping any moves of the current one that were not read, and sets the board to the
+    // game's starting position. Returns false once there are no more games.
+    boolean nextGame() throws IOException {
+        while (isInMoveText && readMoveTextToken() == TOKEN_MOVE) {
+            // The rest of the current game is skipped without checking its moves
+        }
+        isInMoveText = false;
+        tags.clear();
+        result = RESULT_UNKNOWN;
+
+        boolean hasTags = false;
+        while (true) {
+            int nextCharacter = skipWhitespaceAndComments();
+            if (nextCharacter == '[') {
+                readCharacter();
+                readTagPair();
+                hasTags = true;
+            } else if (nextCharacter == END_OF_INPUT && !hasTags) {
+                return false;
+            } else {
+                break;
+            }
+        }
+
+        gameNumber++;
+        isInMoveText = true;
+        String fen = tags.get("FEN");
+        if (fen != null) {
+            try {
+                board.loadFen(fen);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Game " + gameNumber + " has an invalid FEN tag", e);
+            }
+        } else {
+            board.initializeBoardLayout();
+        }
+        return true;
+    }
+
+    // Reads the current game's next move and makes it on the board. Returns the move, or Move.NO_MOVE once the game's
+    // moves are over. A move that is illegal or ambiguous throws an IllegalArgumentException, after which the caller
+    // may carry on with the next game.
+    int nextMove() throws IOException {
+        if (!isInMoveText) {
+            return Move.NO_MOVE;
+        }
+        if (readMoveTextToken() != TOKEN_MOVE) {
+            isInMoveText = false;
+            return Move.NO_MOVE;
+        }
+        int move = StandardAlgebraicNotation.parseMove(board, token, 0, token.length(), moveBuffer);
+        if (move == Move.NO_MOVE) {
+            throw new IllegalArgumentException("Game " + gameNumber + " has an illegal or ambiguous move '" + token +
+                    "' on line " + lineNumber);
+        }
+        board.makeMove(move);
+        return move;
+    }
+
+    // The reader's own board, which changes with every move read; copy it to keep a position
+    Board getBoard() {
+        return board;
+    }
+
+    String getTag(String name) {
+        return tags.get(name);
+    }
+
+    Map<String, String> getTags() {
+        return tags;
+    }
+
+    // The result given after the game's moves, which is only known once they have all been read
+    String getResult() {
+        return result;
+    }
+
+    long getGameNumber() {
+        return gameNumber;
+    }
+
+    // Leaves the next token in the token buffer. A result, or a tag pair starting a new game where a result was left
+    // out, ends the game.
+    private int readMoveTextToken() throws IOException {
+        while (true) {
+            int nextCharacter = skipWhitespaceAndComments();
+            if (nextCharacter == END_OF_INPUT || nextCharacter == '[') {
+                return TOKEN_END_OF_GAME;
+            }
+            readCharacter();
+            if (nextCharacter == '(') {
+                skipVariation();
+                continue;
+            } else if (nextCharacter == '$') {
+                while (isDigit(peekCharacter())) {
+                    readCharacter();
+                }
+                continue;
+            } else if (nextCharacter == '*') {
+                result = RESULT_UNKNOWN;
+                return TOKEN_END_OF_GAME;
+            } else if (!isTokenCharacter(nextCharacter)) {
+                // A stray period or closing bracket carries nothing
+                continue;
+            }
+
+            token.setLength(0);
+            token.append((char) nextCharacter);
+            while (isTokenCharacter(peekCharacter())) {
+                token.append((char) readCharacter());
+            }
+            // Move numbers are followed by one period, or three before a black move
+            if (peekCharacter() == '.') {
+                while (peekCharacter() == '.') {
+                    readCharacter();
+                }
+                if (isAllDigits(token)) {
+                    continue;
+                }
+            }
+            String tokenResult = getResult(token);
+            if (tokenResult != null) {
+                result = tokenResult;
+                return TOKEN_END_OF_GAME;
+            }
+            return TOKEN_MOVE;
+        }
+    }
+
+    private static String getResult(CharSequence token) {
+        if (contentEquals(token, RESULT_WHITE_WINS)) {
+            return RESULT_WHITE_WINS;
+        } else if (contentEquals(token, RESULT_BLACK_WINS)) {
+            return RESULT_BLACK_WINS;
+        } else if (contentEquals(token, RESULT_DRAW)) {
+            return RESULT_DRAW;
+        }
+        return null;
+    }
+
+    private static boolean contentEquals(CharSequence token, String text) {
+        if (token.length() != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (token.charAt(i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAllDigits(CharSequence token) {
+        for (int i = 0; i < token.length(); i++) {
+            if (!isDigit(token.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(int character) {
+        return character >= '0' && character <= '9';
+    }
+
+    private static boolean isTokenCharacter(int character) {
+        return character > ' ' && character != '.' && character != '{' && character != '}' && character != '(' &&
+                character != ')' && character != '[' && character != ']' && character != ';' && character != '$';
+    }
+
+    // Returns the next character that is not whitespace or part of a comment, without reading it
+    private int skipWhitespaceAndComments() throws IOException {
+        while (true) {
+            int nextCharacter = peekCharacter();
+            if (nextCharacter == '%' && previousCharacter == '\n') {
+                skipLine();
+            } else if (nextCharacter == ';') {
+                skipLine();
+            } else if (nextCharacter == '{') {
+                skipBraceComment();
+            } else if (nextCharacter != END_OF_INPUT && nextCharacter <= ' ') {
+                readCharacter();
+            } else {
+                return nextCharacter;
+            }
+        }
+    }
+
+    private void skipLine() throws IOException {
+        int character;
+        do {
+            character = readCharacter();
+        } while (character != '\n' && character != END_OF_INPUT);
+    }
+
+    private void skipBraceComment() throws IOException {
+        int character;
+        do {
+            character = readCharacter();
+        } while (character != '}' && character != END_OF_INPUT);
+    }
+
+    // Called after the opening parenthesis. Variations may nest, and may hold comments containing parentheses.
+    private void skipVariation() throws IOException {
+        int depth = 1;
+        while (depth > 0) {
+            int nextCharacter = skipWhitespaceAndComments();
+            if (nextCharacter == END_OF_INPUT) {
+                return;
+            }
+            readCharacter();
+            if (nextCharacter == '(') {
+                depth++;
+            } else if (nextCharacter == ')') {
+                depth--;
+            }
+        }
+    }
+
+    // Called after the opening bracket of a tag pair such as [White "Fischer, Robert J."]
+    private void readTagPair() throws IOException {
+        token.setLength(0);
+        while (peekCharacter() == ' ') {
+            readCharacter();
+        }
+        while (peekCharacter() > ' ' && peekCharacter() != '"' && peekCharacter() != ']') {
+            token.append((char) readCharacter());
+        }
+        String name = token.toString();
+
+        token.setLength(0);
+        int character = readCharacter();
+        while (character != '"' && character != ']' && character != '\n' && character != END_OF_INPUT) {
+            character = readCharacter();
+        }
+        if (character == '"') {
+            character = readCharacter();
+            while (character != '"' && character != '\n' && character != END_OF_INPUT) {
+                if (character == '\\' && (peekCharacter() == '"' || peekCharacter() == '\\')) {
+                    character = readCharacter();
+                }
+                token.append((char) character);
+                character = readCharacter();
+            }
+            while (character != ']' && character != '\n' && character != END_OF_INPUT) {
+                character = readCharacter();
+            }
+        }
+        tags.put(name, token.toString());
+    }
+
+    private int peekCharacter() throws IOException {
+        if (inputIndex == inputLength) {
+            inputLength = reader.read(inputBuffer, 0, inputBuffer.length);
+            inputIndex = 0;
+            if (inputLength <= 0) {
+                inputLength = 0;
+                return END_OF_INPUT;
+            }
+        }
+        return inputBuffer[inputIndex];
+    }
+
+    private int readCharacter() throws IOException {
+        int character = peekCharacter();
+        if (character != END_OF_INPUT) {
+            inputIndex++;
+            previousCharacter = character;
+            if (character == '\n') {
+                lineNumber++;
+            }
+        }
+        return character;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // Replays every game in the file, reporting how many games and moves were read and how quickly
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java PgnReader <file.pgn>");
+            return;
+        }
+        long gameCount = 0;
+        long moveCount = 0;
+        long skippedGameCount = 0;
+        long startTime = System.nanoTime();
+        try (PgnReader pgnReader = PgnReader.open(Paths.get(args[0]))) {
+            while (true) {
+                try {
+                    if (!pgnReader.nextGame()) {
+                        break;
+                    }
+                    while (pgnReader.nextMove() != Move.NO_MOVE) {
+                        moveCount++;
+                    }
+                    gameCount++;
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Skipped: " + e.getMessage());
+                    skippedGameCount++;
+                }
+            }
+        }
+        long elapsedNanoseconds = Math.max(1, System.nanoTime() - startTime);
+        System.out.println(String.format("%d games, %d moves, %d skipped in %d ms (%d moves/sec)", gameCount,
+                moveCount, skippedGameCount, elapsedNanoseconds / 1000000L,
+                moveCount * 1000000000L / elapsedNanoseconds));
+    }
+}
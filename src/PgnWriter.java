@@ -0,0 +1,89 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+// Writes games in Portable Game Notation, the plain text format that chess programs and game databases share. A game
+// is written as its tag pairs followed by its moves in Standard Algebraic Notation, and each game is appended after
+// the last, so one file can collect every game played.
+class PgnWriter implements Closeable {
+    // The PGN export format keeps movetext lines within 79 characters
+    private static final int MAX_LINE_LENGTH = 79;
+
+    private final Writer writer;
+    private final Board board = new Board();
+    private final int[] moveBuffer = new int[Move.MAX_MOVES];
+    private final StringBuilder line = new StringBuilder(MAX_LINE_LENGTH + 16);
+    private final StringBuilder moveText = new StringBuilder(16);
+
+    PgnWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    static PgnWriter openForAppending(Path path) throws IOException {
+        return new PgnWriter(Files.newBufferedWriter(path, PgnReader.PGN_CHARSET, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+    }
+
+    // The tags are written in their iteration order, and should begin with the seven that PGN requires: Event, Site,
+    // Date, Round, White, Black and Result. The moves are replayed from the standard starting position, or from the
+    // position in a "FEN" tag if there is one, and must all be legal.
+    void writeGame(Map<String, String> tags, int[] moves, int moveCount) throws IOException {
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            writer.write('[');
+            writer.write(tag.getKey());
+            writer.write(" \"");
+            writer.write(tag.getValue().replace("\\", "\\\\").replace("\"", "\\\""));
+            writer.write("\"]\n");
+        }
+        writer.write('\n');
+
+        String fen = tags.get("FEN");
+        if (fen != null) {
+            board.loadFen(fen);
+        } else {
+            board.initializeBoardLayout();
+        }
+        line.setLength(0);
+        for (int i = 0; i < moveCount; i++) {
+            moveText.setLength(0);
+            if (board.getTurnPlayerColor() == Piece.Color.WHITE) {
+                moveText.append(board.getFullmoveNumber()).append(". ");
+            } else if (i == 0) {
+                moveText.append(board.getFullmoveNumber()).append("... ");
+            }
+            StandardAlgebraicNotation.appendMove(moveText, board, moves[i], moveBuffer);
+            appendToLine(moveText);
+            board.makeMove(moves[i]);
+        }
+        moveText.setLength(0);
+        moveText.append(tags.getOrDefault("Result", "*"));
+        appendToLine(moveText);
+        writer.write(line.toString());
+        writer.write("\n\n");
+    }
+
+    private void appendToLine(CharSequence text) throws IOException {
+        if (line.length() > 0 && line.length() + 1 + text.length() > MAX_LINE_LENGTH) {
+            writer.write(line.toString());
+            writer.write('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0) {
+            line.append(' ');
+        }
+        line.append(text);
+    }
+
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
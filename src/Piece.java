@@ -1,15 +1,19 @@
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 
 class Piece {
-    private Color color;
-    private PieceType pieceType;
+    // A pawn reaching the last row may promote to any of these pieces. The queen is listed first so that callers which
+    // cannot ask the player for a choice find it before the others.
+    static final PieceType[] PROMOTION_PIECE_TYPES = {PieceType.QUEEN, PieceType.ROOK, PieceType.BISHOP,
+            PieceType.KNIGHT};
+
+    private final Color color;
+    private final PieceType pieceType;
 
     public enum Color {
         WHITE("White"), BLACK("Black");
 
-        private String titleCaseColor;
+        private final String titleCaseColor;
         Color(String titleCaseColor) {
             this.titleCaseColor = titleCaseColor;
         }
@@ -23,12 +27,11 @@ class Piece {
     public enum PieceType {
         PAWN("P", '\u2659', '\u265F') {
             @Override
-            public List<int[]> getPossibleMoves(int row, int column, Board currentBoard,
-                                                boolean isCurrentlyTestingCheck) {
+            public int getPossibleMoves(int row, int column, Board currentBoard, int[] moveBuffer,
+                                        int moveCount) {
                 assert (row > 0 && row < Board.MAX_ROWS - 1) : "Pawns cannot start the turn on the first or last row.";
 
-                Piece[][] boardLayout = currentBoard.getBoardLayout();
-                List<int[]> possibleMoves = new ArrayList<>();
+                int currentSquare = Board.getSquareIndex(row, column);
                 int targetRow;
 
                 // White pawns move up the board (along the row array in the negative direction) whereas black pawns
@@ -39,194 +42,239 @@ class Piece {
                     targetRow = row + 1;
                 }
 
-                if (boardLayout[targetRow][column] == null) {
-                    possibleMoves.add(new int[]{targetRow, column});
-                }
-                if (canCaptureEnPassant(row, column - 1, currentBoard) ||
-                        (column > 0 && boardLayout[targetRow][column - 1] != null &&
-                        boardLayout[targetRow][column - 1].color != currentBoard.getTurnPlayerColor())) {
-                    possibleMoves.add(new int[]{targetRow, column - 1});
+                if (currentBoard.isSquareEmpty(targetRow, column)) {
+                    moveCount = addPawnMove(currentSquare, targetRow, column, moveBuffer, moveCount);
                 }
-                if (canCaptureEnPassant(row, column + 1, currentBoard) ||
-                        (column < Board.MAX_COLUMNS - 1 && boardLayout[targetRow][column + 1] != null &&
-                                boardLayout[targetRow][column + 1].color != currentBoard.getTurnPlayerColor())) {
-                    possibleMoves.add(new int[]{targetRow, column + 1});
-                }
-                return possibleMoves;
+                return addPawnCaptures(row, column, targetRow, currentBoard, moveBuffer, moveCount);
             }
 
-            boolean canCaptureEnPassant(int currentRow, int targetColumn, Board currentBoard) {
-                int enPassantRow;
-                boolean canCaptureEnPassant;
+            @Override
+            public int getPossibleCaptures(int row, int column, Board currentBoard, int[] moveBuffer,
+                                           int moveCount) {
+                int targetRow = (currentBoard.getTurnPlayerColor() == Color.WHITE) ? row - 1 : row + 1;
+                // A push onto the last row is included, since promoting changes the material as much as a capture
+                if ((targetRow == 0 || targetRow == Board.MAX_ROWS - 1) &&
+                        currentBoard.isSquareEmpty(targetRow, column)) {
+                    moveCount = addPawnMove(Board.getSquareIndex(row, column), targetRow, column, moveBuffer,
+                            moveCount);
+                }
+                return addPawnCaptures(row, column, targetRow, currentBoard, moveBuffer, moveCount);
+            }
 
-                if (currentBoard.getTurnPlayerColor() == Piece.Color.WHITE) {
-                    enPassantRow = currentRow - 2;
-                } else {
-                    enPassantRow = currentRow + 2;
+            private int addPawnCaptures(int row, int column, int targetRow, Board currentBoard, int[] moveBuffer,
+                                        int moveCount) {
+                Color opponentColor = currentBoard.getOppositeTurnPlayerColor();
+                int currentSquare = Board.getSquareIndex(row, column);
+                long attackedSquares = AttackTables.getPawnAttacks(currentBoard.getTurnPlayerColor(), currentSquare);
+                long captureSquares = attackedSquares & currentBoard.getColorBitboard(opponentColor);
+                while (captureSquares != 0) {
+                    int targetSquare = Long.numberOfTrailingZeros(captureSquares);
+                    captureSquares &= captureSquares - 1;
+                    moveCount = addPawnMove(currentSquare, targetRow, targetSquare % Board.MAX_COLUMNS, moveBuffer,
+                            moveCount);
                 }
 
-                try {
-                    canCaptureEnPassant = (targetColumn >= 0 && targetColumn < Board.MAX_COLUMNS &&
-                            checkPreviousBoardForEnPassantCapture(currentRow, targetColumn, enPassantRow,
-                                    currentBoard.getPreviousBoard()) &&
-                            checkCurrentBoardForEnPassantCapture(currentRow, targetColumn, enPassantRow, currentBoard));
-                } catch (ArrayIndexOutOfBoundsException e) {
-                    return false;
+                int enPassantTargetSquare = currentBoard.getEnPassantTargetSquare();
+                if (enPassantTargetSquare != Board.NO_SQUARE &&
+                        (attackedSquares & (1L << enPassantTargetSquare)) != 0 &&
+                        canCaptureEnPassant(row, enPassantTargetSquare % Board.MAX_COLUMNS, currentBoard)) {
+                    moveBuffer[moveCount++] = Move.encode(currentSquare, enPassantTargetSquare, Move.FLAG_EN_PASSANT);
                 }
-                return canCaptureEnPassant;
+                return moveCount;
             }
 
-            private boolean checkPreviousBoardForEnPassantCapture(int currentRow, int targetColumn, int enPassantRow,
-                                                                  Board previousBoard) {
-                Piece[][] previousBoardLayout = previousBoard.getBoardLayout();
-                return (previousBoardLayout[enPassantRow][targetColumn] != null &&
-                        previousBoardLayout[enPassantRow][targetColumn].getPieceType() == Piece.PieceType.PAWN_UNMOVED &&
-                        (previousBoardLayout[currentRow][targetColumn] == null ||
-                            previousBoardLayout[currentRow][targetColumn].getColor() == previousBoard.getTurnPlayerColor()));
+            private int addPawnMove(int currentSquare, int targetRow, int targetColumn, int[] moveBuffer,
+                                    int moveCount) {
+                int targetSquare = Board.getSquareIndex(targetRow, targetColumn);
+                if (targetRow == 0 || targetRow == Board.MAX_ROWS - 1) {
+                    for (PieceType promotionPieceType : PROMOTION_PIECE_TYPES) {
+                        moveBuffer[moveCount++] = Move.encodePromotion(currentSquare, targetSquare,
+                                promotionPieceType);
+                    }
+                } else {
+                    moveBuffer[moveCount++] = Move.encode(currentSquare, targetSquare, 0);
+                }
+                return moveCount;
             }
 
-            private boolean checkCurrentBoardForEnPassantCapture(int currentRow, int targetColumn, int enPassantRow,
-                                                                 Board currentBoard) {
-                Piece[][] boardLayout = currentBoard.getBoardLayout();
-                return (boardLayout[enPassantRow][targetColumn] == null &&
-                        boardLayout[currentRow][targetColumn] != null &&
-                        boardLayout[currentRow][targetColumn].getPieceType() == Piece.PieceType.PAWN &&
-                        boardLayout[currentRow][targetColumn].getColor() != currentBoard.getTurnPlayerColor());
+            boolean canCaptureEnPassant(int currentRow, int targetColumn, Board currentBoard) {
+                // The en passant target square is only set on the ply directly after a pawn's two-square advance, and
+                // the pawn that advanced must still be beside the capturing pawn
+                return (currentBoard.getPieceTypeAt(currentRow, targetColumn) == Piece.PieceType.PAWN &&
+                        currentBoard.isSquareOccupiedByColor(currentRow, targetColumn,
+                                currentBoard.getOppositeTurnPlayerColor()));
             }
         },
 
 
         PAWN_UNMOVED("p", '\u2659', '\u265F') {
             @Override
-            public List<int[]> getPossibleMoves(int row, int column, Board currentBoard,
-                                                boolean isCurrentlyTestingCheck) {
-                Piece[][] boardLayout = currentBoard.getBoardLayout();
+            public int getPossibleMoves(int row, int column, Board currentBoard, int[] moveBuffer,
+                                        int moveCount) {
                 int enPassantTargetRow;
 
-                List<int[]> possibleMoves = PAWN.getPossibleMoves(row, column, currentBoard, isCurrentlyTestingCheck);
+                moveCount = PAWN.getPossibleMoves(row, column, currentBoard, moveBuffer, moveCount);
                 if (currentBoard.getTurnPlayerColor() == Color.WHITE) {
                     enPassantTargetRow = row - 2;
                 } else {
                     enPassantTargetRow = row + 2;
                 }
 
-                if (boardLayout[enPassantTargetRow][column] == null) {
-                    possibleMoves.add(new int[]{enPassantTargetRow, column});
+                if (currentBoard.isSquareEmpty((row + enPassantTargetRow) / 2, column) &&
+                        currentBoard.isSquareEmpty(enPassantTargetRow, column)) {
+                    moveBuffer[moveCount++] = Move.encode(Board.getSquareIndex(row, column),
+                            Board.getSquareIndex(enPassantTargetRow, column), Move.FLAG_DOUBLE_PAWN_PUSH);
                 }
-                return possibleMoves;
+                return moveCount;
+            }
+
+            @Override
+            public int getPossibleCaptures(int row, int column, Board currentBoard, int[] moveBuffer,
+                                           int moveCount) {
+                return PAWN.getPossibleCaptures(row, column, currentBoard, moveBuffer, moveCount);
             }
         },
 
         ROOK("R", '\u2656', '\u265C') {
             @Override
-            public List<int[]> getPossibleMoves(int row, int column, Board currentBoard,
-                                                boolean isCurrentlyTestingCheck) {
-                return currentBoard.getOrthogonalMoves(row, column);
+            public int getPossibleMoves(int row, int column, Board currentBoard, int[] moveBuffer,
+                                        int moveCount) {
+                return currentBoard.getOrthogonalMoves(row, column, moveBuffer, moveCount);
+            }
+
+            @Override
+            public int getPossibleCaptures(int row, int column, Board currentBoard, int[] moveBuffer,
+                                           int moveCount) {
+                return currentBoard.getOrthogonalCaptures(row, column, moveBuffer, moveCount);
             }
         },
 
         ROOK_UNMOVED("R", '\u2656', '\u265C') {
             @Override
-            public List<int[]> getPossibleMoves(int row, int column, Board currentBoard,
-                                                boolean isCurrentlyTestingCheck) {
-                return ROOK.getPossibleMoves(row, column, currentBoard, isCurrentlyTestingCheck);
+            public int getPossibleMoves(int row, int column, Board currentBoard, int[] moveBuffer,
+                                        int moveCount) {
+                return ROOK.getPossibleMoves(row, column, currentBoard, moveBuffer, moveCount);
+            }
+
+            @Override
+            public int getPossibleCaptures(int row, int column, Board currentBoard, int[] moveBuffer,
+                                           int moveCount) {
+                return ROOK.getPossibleCaptures(row, column, currentBoard, moveBuffer, moveCount);
             }
         },
 
         KNIGHT("N", '\u2658', '\u265E') {
             @Override
-            public List<int[]> getPossibleMoves(int row, int column, Board currentBoard,
-                                                boolean isCurrentlyTestingCheck) {
-                Piece[][] boardLayout = currentBoard.getBoardLayout();
-                List<int[]> possibleMoves = new ArrayList<>();
-                int[][] allMoves = {{row - 1, column - 2}, {row - 1, column + 2},
-                        {row - 2, column - 1}, {row - 2, column + 1},
-                        {row + 1, column - 2}, {row + 1, column + 2},
-                        {row + 2, column - 1}, {row + 2, column + 1}};
-
-                for (int[] i : allMoves) {
-                    if ((0 <= i[0] && i[0] < Board.MAX_ROWS) && (0 <= i[1] && i[1] < Board.MAX_COLUMNS) &&
-                            (boardLayout[i[0]][i[1]] == null ||
-                                    boardLayout[i[0]][i[1]].color != currentBoard.getTurnPlayerColor())) {
-                        possibleMoves.add(i);
-                    }
-                }
-                return possibleMoves;
+            public int getPossibleMoves(int row, int column, Board currentBoard, int[] moveBuffer,
+                                        int moveCount) {
+                int currentSquare = Board.getSquareIndex(row, column);
+                long targetSquares = AttackTables.getKnightAttacks(currentSquare) &
+                        ~currentBoard.getColorBitboard(currentBoard.getTurnPlayerColor());
+                return Board.addMovesToTargetSquares(currentSquare, targetSquares, moveBuffer, moveCount);
+            }
+
+            @Override
+            public int getPossibleCaptures(int row, int column, Board currentBoard, int[] moveBuffer,
+                                           int moveCount) {
+                int currentSquare = Board.getSquareIndex(row, column);
+                long targetSquares = AttackTables.getKnightAttacks(currentSquare) &
+                        currentBoard.getColorBitboard(currentBoard.getOppositeTurnPlayerColor());
+                return Board.addMovesToTargetSquares(currentSquare, targetSquares, moveBuffer, moveCount);
             }
         },
 
         BISHOP("B", '\u2657', '\u265D') {
             @Override
-            public List<int[]> getPossibleMoves(int row, int column, Board currentBoard,
-                                                boolean isCurrentlyTestingCheck) {
-                return currentBoard.getDiagonalMoves(row, column);
+            public int getPossibleMoves(int row, int column, Board currentBoard, int[] moveBuffer,
+                                        int moveCount) {
+                return currentBoard.getDiagonalMoves(row, column, moveBuffer, moveCount);
+            }
+
+            @Override
+            public int getPossibleCaptures(int row, int column, Board currentBoard, int[] moveBuffer,
+                                           int moveCount) {
+                return currentBoard.getDiagonalCaptures(row, column, moveBuffer, moveCount);
             }
         },
 
         QUEEN("Q", '\u2655', '\u265B') {
             @Override
-            public List<int[]> getPossibleMoves(int row, int column, Board currentBoard,
-                                                boolean isCurrentlyTestingCheck) {
-                List<int[]> possibleMoves = currentBoard.getDiagonalMoves(row, column);
-                possibleMoves.addAll(currentBoard.getOrthogonalMoves(row, column));
-                return possibleMoves;
+            public int getPossibleMoves(int row, int column, Board currentBoard, int[] moveBuffer,
+                                        int moveCount) {
+                moveCount = currentBoard.getDiagonalMoves(row, column, moveBuffer, moveCount);
+                return currentBoard.getOrthogonalMoves(row, column, moveBuffer, moveCount);
+            }
+
+            @Override
+            public int getPossibleCaptures(int row, int column, Board currentBoard, int[] moveBuffer,
+                                           int moveCount) {
+                moveCount = currentBoard.getDiagonalCaptures(row, column, moveBuffer, moveCount);
+                return currentBoard.getOrthogonalCaptures(row, column, moveBuffer, moveCount);
             }
         },
 
         KING("K", '\u2654', '\u265A') {
             @Override
-            public List<int[]> getPossibleMoves(int row, int column, Board currentBoard,
-                                                boolean isCurrentlyTestingCheck) {
+            public int getPossibleMoves(int row, int column, Board currentBoard, int[] moveBuffer,
+                                        int moveCount) {
                 assert ((currentBoard.getTurnPlayerColor() == Color.WHITE &&
-                        currentBoard.getWhiteKingPosition() == new int[]{row,column}) ||
+                        Arrays.equals(currentBoard.getWhiteKingPosition(), new int[]{row, column})) ||
                         (currentBoard.getTurnPlayerColor() == Color.BLACK &&
-                                currentBoard.getBlackKingPosition() == new int[]{row,column})) :
+                                Arrays.equals(currentBoard.getBlackKingPosition(), new int[]{row, column}))) :
                         "The king's coordinates have been corrupted.";
 
-                Piece[][] boardLayout = currentBoard.getBoardLayout();
-                List<int[]> possibleMoves = new ArrayList<>();
-                int[][] allMoves = {{row - 1, column - 1}, {row - 1, column},
-                        {row - 1, column + 1}, {row, column - 1},
-                        {row, column + 1}, {row + 1, column - 1},
-                        {row + 1, column}, {row + 1, column + 1}};
-
-                for (int[] i : allMoves) {
-                    if ((0 <= i[0] && i[0] < Board.MAX_ROWS) && (0 <= i[1] && i[1] < Board.MAX_COLUMNS) &&
-                            (boardLayout[i[0]][i[1]] == null ||
-                                    boardLayout[i[0]][i[1]].color != currentBoard.getTurnPlayerColor())) {
-                        possibleMoves.add(i);
-                    }
-                }
-                return possibleMoves;
+                int currentSquare = Board.getSquareIndex(row, column);
+                long targetSquares = AttackTables.getKingAttacks(currentSquare) &
+                        ~currentBoard.getColorBitboard(currentBoard.getTurnPlayerColor());
+                return Board.addMovesToTargetSquares(currentSquare, targetSquares, moveBuffer, moveCount);
+            }
+
+            @Override
+            public int getPossibleCaptures(int row, int column, Board currentBoard, int[] moveBuffer,
+                                           int moveCount) {
+                int currentSquare = Board.getSquareIndex(row, column);
+                long targetSquares = AttackTables.getKingAttacks(currentSquare) &
+                        currentBoard.getColorBitboard(currentBoard.getOppositeTurnPlayerColor());
+                return Board.addMovesToTargetSquares(currentSquare, targetSquares, moveBuffer, moveCount);
             }
         },
 
         KING_UNMOVED("K", '\u2654', '\u265A') {
             @Override
-            public List<int[]> getPossibleMoves(int row, int column, Board currentBoard,
-                                                boolean isCurrentlyTestingCheck) {
-                List<int[]> possibleMoves = KING.getPossibleMoves(row, column, currentBoard, isCurrentlyTestingCheck);
-
-                // To prevent infinite recursion, we do not check if the king can castle when testing if any of the
-                // opponent's moves intersect with that of the turn player's king
-                if (!isCurrentlyTestingCheck) {
-                    if (currentBoard.canCastleLeft()) {
-                        possibleMoves.add(new int[]{row, column - 2});
-                    }
-                    if (currentBoard.canCastleRight()) {
-                        possibleMoves.add(new int[]{row, column + 2});
-                    }
+            public int getPossibleMoves(int row, int column, Board currentBoard, int[] moveBuffer,
+                                        int moveCount) {
+                moveCount = KING.getPossibleMoves(row, column, currentBoard, moveBuffer, moveCount);
+                int currentSquare = Board.getSquareIndex(row, column);
+
+                if (currentBoard.canCastleLeft()) {
+                    moveBuffer[moveCount++] = Move.encode(currentSquare, Board.getSquareIndex(row, column - 2),
+                            Move.FLAG_CASTLE);
                 }
-                return possibleMoves;
+                if (currentBoard.canCastleRight()) {
+                    moveBuffer[moveCount++] = Move.encode(currentSquare, Board.getSquareIndex(row, column + 2),
+                            Move.FLAG_CASTLE);
+                }
+                return moveCount;
+            }
+
+            @Override
+            public int getPossibleCaptures(int row, int column, Board currentBoard, int[] moveBuffer,
+                                           int moveCount) {
+                return KING.getPossibleCaptures(row, column, currentBoard, moveBuffer, moveCount);
             }
         };
 
-        public abstract List<int[]> getPossibleMoves(int row, int column, Board currentBoard,
-                                                     boolean isCurrentlyTestingCheck);
+        // Writes the piece's moves into moveBuffer starting at index moveCount, and returns the new move count
+        public abstract int getPossibleMoves(int row, int column, Board currentBoard, int[] moveBuffer,
+                                             int moveCount);
+
+        // As getPossibleMoves, but only the captures and promotions, which are all that change the material
+        public abstract int getPossibleCaptures(int row, int column, Board currentBoard, int[] moveBuffer,
+                                                int moveCount);
 
-        private String chessNotationSymbol;
-        private char whitePieceSymbol;
-        private char blackPieceSymbol;
+        private final String chessNotationSymbol;
+        private final char whitePieceSymbol;
+        private final char blackPieceSymbol;
         PieceType(String chessNotationSymbol, char whitePieceSymbol, char blackPieceSymbol) {
             this.chessNotationSymbol = chessNotationSymbol;
             this.whitePieceSymbol = whitePieceSymbol;
@@ -247,11 +295,28 @@ class Piece {
         }
     }
 
-    Piece(Color color, PieceType piece) {
+    // Pieces are immutable, so there is one shared instance per color and piece type, and a board layout can be built
+    // or compared without allocating any pieces. Indexed by (color ordinal * piece type count + piece type ordinal).
+    private static final int PIECE_TYPE_COUNT = PieceType.values().length;
+    private static final Piece[] PIECES = new Piece[Color.values().length * PIECE_TYPE_COUNT];
+
+    static {
+        for (Color color : Color.values()) {
+            for (PieceType pieceType : PieceType.values()) {
+                PIECES[color.ordinal() * PIECE_TYPE_COUNT + pieceType.ordinal()] = new Piece(color, pieceType);
+            }
+        }
+    }
+
+    private Piece(Color color, PieceType piece) {
         this.color = color;
         this.pieceType = piece;
     }
 
+    static Piece of(Color color, PieceType pieceType) {
+        return PIECES[color.ordinal() * PIECE_TYPE_COUNT + pieceType.ordinal()];
+    }
+
     @Override
     public String toString() {
         return pieceType.getUnicodeSymbol(color);
@@ -262,15 +327,7 @@ class Piece {
         return color;
     }
 
-    void setColor(Color color) {
-        this.color = color;
-    }
-
     PieceType getPieceType() {
         return pieceType;
     }
-
-    void setPieceType(PieceType pieceType) {
-        this.pieceType = pieceType;
-    }
 }
\ No newline at end of file
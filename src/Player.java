@@ -0,0 +1,11 @@
+// One side of a game. A player is handed the position whenever it is their turn, and answers with a legal move,
+// so games can be played between any two players without anyone at the keyboard.
+interface Player {
+    String getName();
+
+    // Called before each game, so that a player can forget what it learned in the last one
+    void startGame();
+
+    // The board must be left as it was given. Returns Move.NO_MOVE only if the position has no legal moves.
+    int chooseMove(Board board);
+}
@@ -0,0 +1,331 @@
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Finds the best move for a position with a negamax alpha-beta search. Searches are iteratively deepened, one ply at a
+// time, until the time or node budget runs out, and the deepest completed iteration gives the result. Each iteration
+// tries the previous iteration's principal variation first, which makes the cutoffs much more effective. Results are
+// kept in a transposition table, which both skips positions already searched deeply enough and supplies a best move to
+// try first in the ones that have to be searched again.
+// The search runs on its own copy of the board, so the caller's board is never touched.
+class Search {
+    static final int MATE_SCORE = 100000;
+    static final int MAX_PLY = 64;
+    private static final int INFINITE_SCORE = MATE_SCORE + 1;
+    private static final int DRAW_SCORE = 0;
+    // Mate scores are offset by the ply they are found at, so anything this close to MATE_SCORE is a forced mate
+    private static final int MATE_THRESHOLD = MATE_SCORE - MAX_PLY;
+    private static final int NODES_BETWEEN_LIMIT_CHECKS = 1024;
+    private static final int DEFAULT_TRANSPOSITION_TABLE_MEGABYTES = 16;
+    private static final int HASH_MOVE_PRIORITY = 2000000;
+    private static final int PRINCIPAL_VARIATION_MOVE_PRIORITY = 1000000;
+    private static final int CAPTURE_PRIORITY = 10000;
+
+    private final Board board;
+    private final TranspositionTable transpositionTable;
+    private final int[][] moveBuffers = new int[MAX_PLY][Move.MAX_MOVES];
+    private final int[][] movePriorities = new int[MAX_PLY][Move.MAX_MOVES];
+    // Row n holds the best line found from ply n, and principalVariationLengths[n] its length
+    private final int[][] principalVariationTable = new int[MAX_PLY][MAX_PLY];
+    private final int[] principalVariationLengths = new int[MAX_PLY];
+
+    private int firstDepth = 1;
+    private int[] principalVariation = new int[0];
+    private int bestScore;
+    private int completedDepth;
+    private long nodeCount;
+    private long nodeLimit;
+    private long deadlineNanoseconds;
+    private volatile boolean isSearchStopped;
+    private Consumer<Search> iterationListener;
+
+    Search(Board board) {
+        this(board, new TranspositionTable(DEFAULT_TRANSPOSITION_TABLE_MEGABYTES));
+    }
+
+    // A table passed in can be kept between moves of a game, or shared by several searches running at once
+    Search(Board board, TranspositionTable transpositionTable) {
+        this.board = board.copyBoard();
+        this.transpositionTable = transpositionTable;
+    }
+
+    // Returns the best move found within the budget, or Move.NO_MOVE if the position has no legal moves. A limit of
+    // zero or less means that limit is not applied. The first legal move is returned if not even one ply completes.
+    // The table's age is left to its owner to advance, once per move, since several searches may share the table.
+    int findBestMove(long timeLimitMilliseconds, long nodeLimit, int maxDepth) {
+        long startTime = System.nanoTime();
+        deadlineNanoseconds = (timeLimitMilliseconds > 0) ? startTime + timeLimitMilliseconds * 1000000L : 0;
+        this.nodeLimit = nodeLimit;
+        nodeCount = 0;
+        completedDepth = 0;
+        isSearchStopped = false;
+
+        int[] rootMoves = new int[Move.MAX_MOVES];
+        if (board.getAllPiecesLegalMoves(rootMoves) == 0) {
+            principalVariation = new int[0];
+            return Move.NO_MOVE;
+        }
+        principalVariation = new int[]{rootMoves[0]};
+        bestScore = 0;
+
+        int depthLimit = (maxDepth > 0) ? Math.min(maxDepth, MAX_PLY - 1) : MAX_PLY - 1;
+        for (int depth = Math.min(firstDepth, depthLimit); depth <= depthLimit; depth++) {
+            int score = searchPosition(depth, 0, -INFINITE_SCORE, INFINITE_SCORE);
+            if (isSearchStopped) {
+                break;
+            }
+            bestScore = score;
+            completedDepth = depth;
+            principalVariation = Arrays.copyOf(principalVariationTable[0], principalVariationLengths[0]);
+            if (iterationListener != null) {
+                iterationListener.accept(this);
+            }
+            // Once a forced mate is found, searching deeper cannot find anything better
+            if (Math.abs(score) >= MATE_THRESHOLD) {
+                break;
+            }
+        }
+        return principalVariation[0];
+    }
+
+    // Asks a running search, usually on another thread, to return as soon as possible
+    void stop() {
+        isSearchStopped = true;
+    }
+
+    // Helper threads in a parallel search start a ply deeper than the others, so that they spread out over different
+    // depths instead of all repeating the same work
+    void setFirstDepth(int firstDepth) {
+        this.firstDepth = firstDepth;
+    }
+
+    // Called on the searching thread after each completed iteration, which can read the new depth, score, node count
+    // and principal variation from the search
+    void setIterationListener(Consumer<Search> iterationListener) {
+        this.iterationListener = iterationListener;
+    }
+
+    int[] getPrincipalVariation() {
+        return principalVariation.clone();
+    }
+
+    // From the point of view of the player to move at the root
+    int getBestScore() {
+        return bestScore;
+    }
+
+    int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    long getNodeCount() {
+        return nodeCount;
+    }
+
+    static boolean isMateScore(int score) {
+        return Math.abs(score) >= MATE_THRESHOLD;
+    }
+
+    private int searchPosition(int depth, int ply, int alpha, int beta) {
+        principalVariationLengths[ply] = 0;
+        // A repetition within the search is scored as a draw straight away, since the side that is worse off can
+        // always repeat again
+        if (ply > 0 && (board.getRepetitionCount() > 0 || board.isFiftyMoveRuleDraw())) {
+            return DRAW_SCORE;
+        }
+        if (depth == 0 || ply == MAX_PLY - 1) {
+            return searchCaptures(ply, alpha, beta);
+        }
+        if (isSearchLimitReached()) {
+            return 0;
+        }
+
+        long zobristKey = board.getZobristKey();
+        long tableEntry = transpositionTable.probe(zobristKey);
+        int hashMove = Move.NO_MOVE;
+        if (tableEntry != TranspositionTable.NO_ENTRY) {
+            hashMove = TranspositionTable.getMove(tableEntry);
+            // The root always searches, so that it always has a principal variation to return
+            if (ply > 0 && TranspositionTable.getDepth(tableEntry) >= depth) {
+                int tableScore = getScoreFromTable(TranspositionTable.getScore(tableEntry), ply);
+                int bound = TranspositionTable.getBound(tableEntry);
+                if (bound == TranspositionTable.BOUND_EXACT ||
+                        (bound == TranspositionTable.BOUND_LOWER && tableScore >= beta) ||
+                        (bound == TranspositionTable.BOUND_UPPER && tableScore <= alpha)) {
+                    return tableScore;
+                }
+            }
+        }
+
+        int[] moveBuffer = moveBuffers[ply];
+        int moveCount = board.getAllPiecesLegalMoves(moveBuffer);
+        if (moveCount == 0) {
+            return board.isKingInCheck() ? -MATE_SCORE + ply : DRAW_SCORE;
+        }
+        prioritizeMoves(ply, moveCount, hashMove);
+
+        int originalAlpha = alpha;
+        int bestMove = Move.NO_MOVE;
+        for (int i = 0; i < moveCount; i++) {
+            int move = selectNextMove(ply, i, moveCount);
+            board.makeMove(move);
+            int score = -searchPosition(depth - 1, ply + 1, -beta, -alpha);
+            board.unmakeMove();
+            if (isSearchStopped) {
+                return 0;
+            }
+            if (score > alpha) {
+                alpha = score;
+                bestMove = move;
+                updatePrincipalVariation(ply, move);
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+
+        int bound;
+        if (alpha >= beta) {
+            bound = TranspositionTable.BOUND_LOWER;
+        } else if (alpha > originalAlpha) {
+            bound = TranspositionTable.BOUND_EXACT;
+        } else {
+            bound = TranspositionTable.BOUND_UPPER;
+        }
+        transpositionTable.store(zobristKey, bestMove, getScoreForTable(alpha, ply), depth, bound);
+        return alpha;
+    }
+
+    // Mate scores count plies from the root, but a stored position can be reached at any ply, so the table holds them
+    // counted from the position itself instead
+    private static int getScoreForTable(int score, int ply) {
+        if (score >= MATE_THRESHOLD) {
+            return score + ply;
+        } else if (score <= -MATE_THRESHOLD) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int getScoreFromTable(int score, int ply) {
+        if (score >= MATE_THRESHOLD) {
+            return score - ply;
+        } else if (score <= -MATE_THRESHOLD) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    // Keeps searching captures past the depth limit until the position is quiet, so that a position is never scored
+    // in the middle of an exchange. The player to move may also decline every capture and keep the static score.
+    // Captures that static exchange evaluation says lose material are skipped, since declining does at least as well.
+    private int searchCaptures(int ply, int alpha, int beta) {
+        if (isSearchLimitReached()) {
+            return 0;
+        }
+        int standingScore = board.evaluate();
+        if (standingScore >= beta || ply == MAX_PLY - 1) {
+            return standingScore;
+        }
+        alpha = Math.max(alpha, standingScore);
+
+        int[] moveBuffer = moveBuffers[ply];
+        int moveCount = board.getAllPiecesLegalCaptures(moveBuffer);
+        int captureCount = 0;
+        for (int i = 0; i < moveCount; i++) {
+            if (board.getStaticExchangeScore(moveBuffer[i]) >= 0) {
+                moveBuffer[captureCount++] = moveBuffer[i];
+            }
+        }
+        prioritizeMoves(ply, captureCount, Move.NO_MOVE);
+
+        for (int i = 0; i < captureCount; i++) {
+            int move = selectNextMove(ply, i, captureCount);
+            board.makeMove(move);
+            int score = -searchCaptures(ply + 1, -beta, -alpha);
+            board.unmakeMove();
+            if (isSearchStopped) {
+                return 0;
+            }
+            if (score > alpha) {
+                alpha = score;
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+        return alpha;
+    }
+
+    private boolean isSearchLimitReached() {
+        nodeCount++;
+        if ((nodeCount & (NODES_BETWEEN_LIMIT_CHECKS - 1)) == 0) {
+            if ((nodeLimit > 0 && nodeCount >= nodeLimit) ||
+                    (deadlineNanoseconds != 0 && System.nanoTime() - deadlineNanoseconds >= 0)) {
+                isSearchStopped = true;
+            }
+        }
+        return isSearchStopped;
+    }
+
+    private boolean isCapture(int move) {
+        int targetSquare = Move.getTargetSquare(move);
+        return Move.hasFlag(move, Move.FLAG_EN_PASSANT) || Move.hasFlag(move, Move.FLAG_PROMOTION) ||
+                !board.isSquareEmpty(targetSquare / Board.MAX_COLUMNS, targetSquare % Board.MAX_COLUMNS);
+    }
+
+    // The transposition table's move goes first, then the previous iteration's move at this ply, then captures of the
+    // most valuable pieces by the least valuable ones, then everything else in generation order
+    private void prioritizeMoves(int ply, int moveCount, int hashMove) {
+        int[] moveBuffer = moveBuffers[ply];
+        int[] priorities = movePriorities[ply];
+        int principalVariationMove = (ply < principalVariation.length) ? principalVariation[ply] : Move.NO_MOVE;
+        for (int i = 0; i < moveCount; i++) {
+            int move = moveBuffer[i];
+            int currentSquare = Move.getCurrentSquare(move);
+            int targetSquare = Move.getTargetSquare(move);
+            if (move == hashMove) {
+                priorities[i] = HASH_MOVE_PRIORITY;
+            } else if (move == principalVariationMove) {
+                priorities[i] = PRINCIPAL_VARIATION_MOVE_PRIORITY;
+            } else if (isCapture(move)) {
+                Piece.PieceType capturedPieceType = board.getPieceTypeAt(targetSquare / Board.MAX_COLUMNS,
+                        targetSquare % Board.MAX_COLUMNS);
+                int capturedValue = (capturedPieceType == null) ? Evaluation.PAWN_VALUE :
+                        Evaluation.getPieceValue(capturedPieceType);
+                int capturingValue = Evaluation.getPieceValue(board.getPieceTypeAt(
+                        currentSquare / Board.MAX_COLUMNS, currentSquare % Board.MAX_COLUMNS));
+                priorities[i] = CAPTURE_PRIORITY + capturedValue * 10 - capturingValue / 10;
+            } else {
+                priorities[i] = 0;
+            }
+        }
+    }
+
+    // Swaps the highest priority move left in the buffer into position, so that moves are only sorted as far as the
+    // search actually gets before a cutoff
+    private int selectNextMove(int ply, int index, int moveCount) {
+        int[] moveBuffer = moveBuffers[ply];
+        int[] priorities = movePriorities[ply];
+        int bestIndex = index;
+        for (int i = index + 1; i < moveCount; i++) {
+            if (priorities[i] > priorities[bestIndex]) {
+                bestIndex = i;
+            }
+        }
+        int move = moveBuffer[bestIndex];
+        moveBuffer[bestIndex] = moveBuffer[index];
+        moveBuffer[index] = move;
+        int priority = priorities[bestIndex];
+        priorities[bestIndex] = priorities[index];
+        priorities[index] = priority;
+        return move;
+    }
+
+    private void updatePrincipalVariation(int ply, int move) {
+        int[] principalVariationRow = principalVariationTable[ply];
+        principalVariationRow[0] = move;
+        int childLength = principalVariationLengths[ply + 1];
+        System.arraycopy(principalVariationTable[ply + 1], 0, principalVariationRow, 1, childLength);
+        principalVariationLengths[ply] = childLength + 1;
+    }
+}
@@ -0,0 +1,35 @@
+// Plays the move found by a search within fixed limits, keeping its transposition table between the moves of a game.
+// The limits are those of Search.findBestMove. A node or depth limit makes the player deterministic, which suits
+// comparing two versions of the engine, while a time limit does not.
+class SearchPlayer implements Player {
+    private final String name;
+    private final long timeLimitMilliseconds;
+    private final long nodeLimit;
+    private final int maxDepth;
+    private final TranspositionTable transpositionTable;
+
+    SearchPlayer(String name, long timeLimitMilliseconds, long nodeLimit, int maxDepth,
+                 int transpositionTableMegabytes) {
+        this.name = name;
+        this.timeLimitMilliseconds = timeLimitMilliseconds;
+        this.nodeLimit = nodeLimit;
+        this.maxDepth = maxDepth;
+        transpositionTable = new TranspositionTable(transpositionTableMegabytes);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void startGame() {
+        transpositionTable.clear();
+    }
+
+    @Override
+    public int chooseMove(Board board) {
+        transpositionTable.incrementAge();
+        return new Search(board, transpositionTable).findBestMove(timeLimitMilliseconds, nodeLimit, maxDepth);
+    }
+}
@@ -0,0 +1,120 @@
+// Hands out the legal moves of a position one at a time, generating and checking them only as they are asked for, so
+// a caller that only needs to know whether any legal move exists usually stops after the first one.
+// Moves come in stages: captures, then the other moves of every piece except the king, then king moves. When the king
+// is in check the king moves come first instead, since most other moves fail to answer the check.
+class StagedMoveGenerator {
+    private static final int STAGE_START = 0;
+    private static final int STAGE_CAPTURES = 1;
+    private static final int STAGE_QUIET_MOVES = 2;
+    private static final int STAGE_KING_MOVES = 3;
+    private static final int STAGE_FINISHED = 4;
+
+    private final Board board;
+    private final int[] moveBuffer = new int[Move.MAX_MOVES];
+    private int moveCount;
+    private int moveIndex;
+    // Captures are moved to the front of the buffer, ahead of this index
+    private int captureCount;
+    private int stage;
+    private boolean isKingFirst;
+
+    StagedMoveGenerator(Board board) {
+        this.board = board;
+    }
+
+    // Starts again from the board's current position
+    void reset() {
+        stage = STAGE_START;
+        moveCount = 0;
+        moveIndex = 0;
+    }
+
+    // Returns the next legal move, or Move.NO_MOVE once every move has been handed out
+    int nextLegalMove() {
+        while (true) {
+            while (moveIndex < getStageEnd()) {
+                int move = moveBuffer[moveIndex++];
+                if (board.isMoveLegal(move)) {
+                    return move;
+                }
+            }
+            if (!advanceStage()) {
+                return Move.NO_MOVE;
+            }
+        }
+    }
+
+    private int getStageEnd() {
+        return (stage == STAGE_CAPTURES) ? captureCount : moveCount;
+    }
+
+    private boolean advanceStage() {
+        switch (stage) {
+            case STAGE_START:
+                isKingFirst = board.isKingInCheck();
+                if (isKingFirst) {
+                    generateKingMoves();
+                    stage = STAGE_KING_MOVES;
+                } else {
+                    generateNonKingMoves();
+                    stage = STAGE_CAPTURES;
+                }
+                return true;
+            case STAGE_CAPTURES:
+                stage = STAGE_QUIET_MOVES;
+                return true;
+            case STAGE_QUIET_MOVES:
+                if (isKingFirst) {
+                    stage = STAGE_FINISHED;
+                    return false;
+                }
+                generateKingMoves();
+                stage = STAGE_KING_MOVES;
+                return true;
+            case STAGE_KING_MOVES:
+                if (isKingFirst) {
+                    generateNonKingMoves();
+                    stage = STAGE_CAPTURES;
+                    return true;
+                }
+                stage = STAGE_FINISHED;
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private void generateKingMoves() {
+        int[] kingPosition = (board.getTurnPlayerColor() == Piece.Color.WHITE) ?
+                board.getWhiteKingPosition() : board.getBlackKingPosition();
+        moveCount = board.getPieceTypeAt(kingPosition[0], kingPosition[1])
+                .getPossibleMoves(kingPosition[0], kingPosition[1], board, moveBuffer, 0);
+        moveIndex = 0;
+    }
+
+    // Generates the moves of every piece but the king, then partitions the captures, including promotions, to the front
+    private void generateNonKingMoves() {
+        long nonKingPieces = board.getColorBitboard(board.getTurnPlayerColor()) &
+                ~board.getPieceBitboard(board.getTurnPlayerColor(), Piece.PieceType.KING);
+        moveCount = 0;
+        while (nonKingPieces != 0) {
+            int square = Long.numberOfTrailingZeros(nonKingPieces);
+            nonKingPieces &= nonKingPieces - 1;
+            int row = square / Board.MAX_COLUMNS;
+            int column = square % Board.MAX_COLUMNS;
+            moveCount = board.getPieceTypeAt(row, column).getPossibleMoves(row, column, board, moveBuffer, moveCount);
+        }
+
+        long opponentPieces = board.getColorBitboard(board.getOppositeTurnPlayerColor());
+        captureCount = 0;
+        for (int i = 0; i < moveCount; i++) {
+            int move = moveBuffer[i];
+            if ((opponentPieces & (1L << Move.getTargetSquare(move))) != 0 ||
+                    (Move.getFlags(move) & (Move.FLAG_EN_PASSANT | Move.FLAG_PROMOTION)) != 0) {
+                moveBuffer[i] = moveBuffer[captureCount];
+                moveBuffer[captureCount++] = move;
+            }
+        }
+        moveIndex = 0;
+    }
+}
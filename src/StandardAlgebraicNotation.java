@@ -0,0 +1,198 @@
+// Converts moves to and from Standard Algebraic Notation, the move format of PGN files, such as "Nbd7", "exd6",
+// "O-O-O" and "e8=Q+". A SAN move only has a meaning in its own position, so both directions work against a board's
+// legal moves. Both take the caller's move buffer, so that replaying many games does not allocate one per move.
+final class StandardAlgebraicNotation {
+    private static final String PIECE_LETTERS = "NBRQK";
+    private static final Piece.PieceType[] LETTER_PIECE_TYPES = {Piece.PieceType.KNIGHT, Piece.PieceType.BISHOP,
+            Piece.PieceType.ROOK, Piece.PieceType.QUEEN, Piece.PieceType.KING};
+    private static final int KING_LETTER_INDEX = 4;
+
+    private StandardAlgebraicNotation() {
+    }
+
+    static int parseMove(Board board, String san) {
+        return parseMove(board, san, 0, san.length(), new int[Move.MAX_MOVES]);
+    }
+
+    // Returns the legal move that san.subSequence(start, end) describes, or Move.NO_MOVE if it describes no legal move
+    // or more than one. Check marks and annotations such as "+", "#", "!" and "?" are ignored, castling may be written
+    // with zeros, and a promotion may leave out its "=".
+    static int parseMove(Board board, CharSequence san, int start, int end, int[] moveBuffer) {
+        while (end > start && isAnnotationCharacter(san.charAt(end - 1))) {
+            end--;
+        }
+        if (end - start < 2) {
+            return Move.NO_MOVE;
+        }
+        int legalMoveCount = board.getAllPiecesLegalMoves(moveBuffer);
+
+        char firstCharacter = san.charAt(start);
+        if (firstCharacter == 'O' || firstCharacter == '0') {
+            boolean isQueenside = end - start >= 5;
+            for (int i = 0; i < legalMoveCount; i++) {
+                int move = moveBuffer[i];
+                if (Move.hasFlag(move, Move.FLAG_CASTLE) &&
+                        (Move.getTargetSquare(move) < Move.getCurrentSquare(move)) == isQueenside) {
+                    return move;
+                }
+            }
+            return Move.NO_MOVE;
+        }
+
+        Piece.PieceType pieceType = Piece.PieceType.PAWN;
+        int letterIndex = PIECE_LETTERS.indexOf(firstCharacter);
+        if (letterIndex >= 0) {
+            pieceType = LETTER_PIECE_TYPES[letterIndex];
+            start++;
+        }
+        Piece.PieceType promotionPieceType = null;
+        letterIndex = PIECE_LETTERS.indexOf(san.charAt(end - 1));
+        if (pieceType == Piece.PieceType.PAWN && letterIndex >= 0 && letterIndex != KING_LETTER_INDEX) {
+            promotionPieceType = LETTER_PIECE_TYPES[letterIndex];
+            end--;
+            if (end > start && san.charAt(end - 1) == '=') {
+                end--;
+            }
+        }
+        if (end - start < 2) {
+            return Move.NO_MOVE;
+        }
+        int targetColumn = san.charAt(end - 2) - 'a';
+        int targetRank = san.charAt(end - 1) - '0';
+        if (targetColumn < 0 || targetColumn >= Board.MAX_COLUMNS || targetRank < 1 || targetRank > Board.MAX_ROWS) {
+            return Move.NO_MOVE;
+        }
+        int targetSquare = Board.getSquareIndex(Board.MAX_ROWS - targetRank, targetColumn);
+
+        // Anything between the piece letter and the target square is a capture mark, or the file or rank the piece
+        // moves from when more than one such piece could reach the target
+        int currentColumn = Board.NO_SQUARE;
+        int currentRow = Board.NO_SQUARE;
+        for (int i = start; i < end - 2; i++) {
+            char sanCharacter = san.charAt(i);
+            if (sanCharacter >= 'a' && sanCharacter <= 'h') {
+                currentColumn = sanCharacter - 'a';
+            } else if (sanCharacter >= '1' && sanCharacter <= '8') {
+                currentRow = Board.MAX_ROWS - (sanCharacter - '0');
+            } else if (sanCharacter != 'x' && sanCharacter != ':' && sanCharacter != '-') {
+                return Move.NO_MOVE;
+            }
+        }
+
+        long movingPieces = board.getPieceBitboard(board.getTurnPlayerColor(), pieceType);
+        int matchingMove = Move.NO_MOVE;
+        for (int i = 0; i < legalMoveCount; i++) {
+            int move = moveBuffer[i];
+            int currentSquare = Move.getCurrentSquare(move);
+            if (Move.getTargetSquare(move) != targetSquare || (movingPieces & (1L << currentSquare)) == 0 ||
+                    Move.getPromotionPieceType(move) != promotionPieceType ||
+                    (currentColumn != Board.NO_SQUARE && currentSquare % Board.MAX_COLUMNS != currentColumn) ||
+                    (currentRow != Board.NO_SQUARE && currentSquare / Board.MAX_COLUMNS != currentRow)) {
+                continue;
+            }
+            if (matchingMove != Move.NO_MOVE) {
+                return Move.NO_MOVE;
+            }
+            matchingMove = move;
+        }
+        return matchingMove;
+    }
+
+    private static boolean isAnnotationCharacter(char sanCharacter) {
+        return sanCharacter == '+' || sanCharacter == '#' || sanCharacter == '!' || sanCharacter == '?';
+    }
+
+    static String toString(Board board, int move) {
+        StringBuilder san = new StringBuilder(8);
+        appendMove(san, board, move, new int[Move.MAX_MOVES]);
+        return san.toString();
+    }
+
+    // Appends the notation of a legal move of the board's turn player. The move is made and unmade on the board to
+    // find whether it gives check or mate.
+    static void appendMove(StringBuilder san, Board board, int move, int[] moveBuffer) {
+        int currentSquare = Move.getCurrentSquare(move);
+        int targetSquare = Move.getTargetSquare(move);
+        if (Move.hasFlag(move, Move.FLAG_CASTLE)) {
+            san.append((targetSquare < currentSquare) ? "O-O-O" : "O-O");
+        } else {
+            Piece.PieceType pieceType = getMovingPieceType(board, currentSquare);
+            boolean isCapture = Move.hasFlag(move, Move.FLAG_EN_PASSANT) ||
+                    (board.getColorBitboard(board.getOppositeTurnPlayerColor()) & (1L << targetSquare)) != 0;
+            if (pieceType == Piece.PieceType.PAWN) {
+                if (isCapture) {
+                    san.append(getFileCharacter(currentSquare));
+                }
+            } else {
+                san.append(pieceType);
+                appendDisambiguation(san, board, move, pieceType, moveBuffer);
+            }
+            if (isCapture) {
+                san.append('x');
+            }
+            san.append(getFileCharacter(targetSquare)).append(getRankCharacter(targetSquare));
+            if (Move.hasFlag(move, Move.FLAG_PROMOTION)) {
+                san.append('=').append(Move.getPromotionPieceType(move));
+            }
+        }
+
+        board.makeMove(move);
+        if (board.isKingInCheck()) {
+            san.append(board.isCheckmate() ? '#' : '+');
+        }
+        board.unmakeMove();
+    }
+
+    private static Piece.PieceType getMovingPieceType(Board board, int square) {
+        long squareBit = 1L << square;
+        for (Piece.PieceType pieceType : LETTER_PIECE_TYPES) {
+            if ((board.getPieceBitboard(board.getTurnPlayerColor(), pieceType) & squareBit) != 0) {
+                return pieceType;
+            }
+        }
+        return Piece.PieceType.PAWN;
+    }
+
+    // A piece names the file it moves from if another piece of its type can reach the same square, the rank if that
+    // other piece shares its file, and both if pieces share each
+    private static void appendDisambiguation(StringBuilder san, Board board, int move, Piece.PieceType pieceType,
+                                             int[] moveBuffer) {
+        int currentSquare = Move.getCurrentSquare(move);
+        long otherPieces = board.getPieceBitboard(board.getTurnPlayerColor(), pieceType) & ~(1L << currentSquare);
+        if (otherPieces == 0) {
+            return;
+        }
+        int legalMoveCount = board.getAllPiecesLegalMoves(moveBuffer);
+        boolean isAmbiguous = false;
+        boolean sharesColumn = false;
+        boolean sharesRow = false;
+        for (int i = 0; i < legalMoveCount; i++) {
+            int otherCurrentSquare = Move.getCurrentSquare(moveBuffer[i]);
+            if (Move.getTargetSquare(moveBuffer[i]) != Move.getTargetSquare(move) ||
+                    (otherPieces & (1L << otherCurrentSquare)) == 0) {
+                continue;
+            }
+            isAmbiguous = true;
+            sharesColumn |= otherCurrentSquare % Board.MAX_COLUMNS == currentSquare % Board.MAX_COLUMNS;
+            sharesRow |= otherCurrentSquare / Board.MAX_COLUMNS == currentSquare / Board.MAX_COLUMNS;
+        }
+        if (!isAmbiguous) {
+            return;
+        }
+        if (!sharesColumn) {
+            san.append(getFileCharacter(currentSquare));
+        } else if (!sharesRow) {
+            san.append(getRankCharacter(currentSquare));
+        } else {
+            san.append(getFileCharacter(currentSquare)).append(getRankCharacter(currentSquare));
+        }
+    }
+
+    private static char getFileCharacter(int square) {
+        return (char) ('a' + square % Board.MAX_COLUMNS);
+    }
+
+    private static char getRankCharacter(int square) {
+        return (char) ('0' + Board.MAX_ROWS - square / Board.MAX_COLUMNS);
+    }
+}
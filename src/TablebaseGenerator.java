@@ -0,0 +1,354 @@
+// Works out the exact result of every position of one endgame by retrograde analysis, working back from the mates.
+// A first pass over every position counts its legal moves that stay within the endgame and looks up the ones that
+// leave it, captures and promotions, in the smaller endgames' tables. Then, one ply of distance at a time, every
+// position just found to be lost makes each position that can move into it a win, and every position just found to
+// be won brings each position that can move into it one step closer to having nothing but lost moves left. Moves are
+// taken back by running the piece's own moves in reverse, so no position is ever searched forwards twice.
+// Positions that are never reached are draws, and so are impossible positions, which no legal board can probe.
+final class TablebaseGenerator {
+    private static final int WHITE = 0;
+    private static final int BLACK = 1;
+    private static final int NO_SQUARE = -1;
+    private static final int MAX_RESULT = 0xFF;
+    private static final int ESCAPE_FLAG = 0x80;
+    private static final int MOVE_COUNT_MASK = 0x7F;
+    private static final Piece.Color[] COLORS = {Piece.Color.WHITE, Piece.Color.BLACK};
+
+    // Slots 0 and 1 hold the white and black kings, and the rest the other pieces in the endgame's order
+    private final int slotCount;
+    private final int[] slotColors;
+    private final Piece.PieceType[] slotTypes;
+    private final int[] squares;
+    // Where each capture or promotion leads, indexed by [captured slot + 1][promoted slot + 1][promotion piece]
+    private final Tablebases.TableMapping[][][] conversionMappings;
+
+    // Results as the tables hold them: 0 for a draw or not yet known, otherwise the distance to mate in plies plus one
+    private byte[] results;
+    // For positions whose result is not yet known: the number of moves within the endgame not yet known to lose, plus
+    // ESCAPE_FLAG if a capture or promotion reaches a draw, so that the position can never be lost
+    private byte[] remainingMoves;
+    // The longest loss among a position's captures and promotions, in the same form as the results
+    private byte[] conversionLosses;
+    private int maxResult;
+
+    TablebaseGenerator(Piece.Color[] pieceColors, Piece.PieceType[] pieceTypes, int pieceCount) {
+        slotCount = pieceCount + 2;
+        slotColors = new int[slotCount];
+        slotTypes = new Piece.PieceType[slotCount];
+        squares = new int[slotCount];
+        slotColors[0] = WHITE;
+        slotColors[1] = BLACK;
+        slotTypes[0] = Piece.PieceType.KING;
+        slotTypes[1] = Piece.PieceType.KING;
+        for (int i = 0; i < pieceCount; i++) {
+            slotColors[i + 2] = (pieceColors[i] == Piece.Color.WHITE) ? WHITE : BLACK;
+            slotTypes[i + 2] = pieceTypes[i];
+        }
+
+        conversionMappings = new Tablebases.TableMapping[slotCount + 1][slotCount + 1][];
+        for (int capturedSlot = NO_SQUARE; capturedSlot < slotCount; capturedSlot++) {
+            for (int promotedSlot = NO_SQUARE; promotedSlot < slotCount; promotedSlot++) {
+                if ((capturedSlot >= 0 && capturedSlot < 2) || (promotedSlot >= 0 &&
+                        (promotedSlot == capturedSlot || slotTypes[promotedSlot] != Piece.PieceType.PAWN)) ||
+                        (capturedSlot == NO_SQUARE && promotedSlot == NO_SQUARE)) {
+                    continue;
+                }
+                int promotionCount = (promotedSlot >= 0) ? Piece.PROMOTION_PIECE_TYPES.length : 1;
+                conversionMappings[capturedSlot + 1][promotedSlot + 1] = new Tablebases.TableMapping[promotionCount];
+                for (int i = 0; i < promotionCount; i++) {
+                    conversionMappings[capturedSlot + 1][promotedSlot + 1][i] = findConversionMapping(capturedSlot,
+                            promotedSlot, (promotedSlot >= 0) ? Piece.PROMOTION_PIECE_TYPES[i] : null);
+                }
+            }
+        }
+    }
+
+    // Finds, generating it if need be, the table for the pieces left after a capture or promotion
+    private Tablebases.TableMapping findConversionMapping(int capturedSlot, int promotedSlot,
+                                                          Piece.PieceType promotionPieceType) {
+        Piece.Color[] colors = new Piece.Color[slotCount];
+        Piece.PieceType[] pieceTypes = new Piece.PieceType[slotCount];
+        int[] slots = new int[slotCount];
+        int pieceCount = 0;
+        for (int slot = 2; slot < slotCount; slot++) {
+            if (slot == capturedSlot) {
+                continue;
+            }
+            colors[pieceCount] = COLORS[slotColors[slot]];
+            pieceTypes[pieceCount] = (slot == promotedSlot) ? promotionPieceType : slotTypes[slot];
+            slots[pieceCount++] = slot;
+        }
+        return Tablebases.findMapping(colors, pieceTypes, slots, pieceCount, true);
+    }
+
+    byte[] generate() {
+        int positionCount = EndgameTablebase.getPositionCount(slotCount);
+        results = new byte[positionCount];
+        remainingMoves = new byte[positionCount];
+        conversionLosses = new byte[positionCount];
+        maxResult = 0;
+        for (int index = 0; index < positionCount; index++) {
+            initializePosition(index);
+        }
+        for (int distance = 0; distance < maxResult; distance++) {
+            if (distance + 2 > MAX_RESULT) {
+                throw new IllegalStateException("A mate in the endgame is too long for its table to hold");
+            }
+            for (int index = 0; index < positionCount; index++) {
+                if ((results[index] & 0xFF) == distance + 1) {
+                    retractMovesInto(index, distance);
+                }
+            }
+        }
+        byte[] generatedResults = results;
+        results = null;
+        remainingMoves = null;
+        conversionLosses = null;
+        return generatedResults;
+    }
+
+    // Fills the squares from an index, returning the side to move
+    private int decodeIndex(int index) {
+        for (int slot = slotCount - 1; slot >= 0; slot--) {
+            squares[slot] = index & (Board.MAX_ROWS * Board.MAX_COLUMNS - 1);
+            index >>>= 6;
+        }
+        return index;
+    }
+
+    private void initializePosition(int index) {
+        int sideToMove = decodeIndex(index);
+        if (!isValidPosition(sideToMove)) {
+            return;
+        }
+        long occupiedSquares = getOccupiedSquares();
+        boolean hasLegalMove = false;
+        boolean hasEscape = false;
+        int inEndgameMoveCount = 0;
+        int shortestWin = Integer.MAX_VALUE;
+        int longestLoss = NO_SQUARE;
+
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slotColors[slot] != sideToMove) {
+                continue;
+            }
+            int currentSquare = squares[slot];
+            long targetSquares = getMoveTargets(slot, occupiedSquares);
+            while (targetSquares != 0) {
+                int targetSquare = Long.numberOfTrailingZeros(targetSquares);
+                targetSquares &= targetSquares - 1;
+                int capturedSlot = getSlotAt(targetSquare);
+                squares[slot] = targetSquare;
+                if (capturedSlot != NO_SQUARE) {
+                    squares[capturedSlot] = NO_SQUARE;
+                }
+
+                if (!isKingAttacked(sideToMove)) {
+                    hasLegalMove = true;
+                    boolean isPromotion = slotTypes[slot] == Piece.PieceType.PAWN && isOnFirstOrLastRow(targetSquare);
+                    if (isPromotion || capturedSlot != NO_SQUARE) {
+                        Tablebases.TableMapping[] mappings =
+                                conversionMappings[capturedSlot + 1][isPromotion ? slot + 1 : 0];
+                        for (Tablebases.TableMapping mapping : mappings) {
+                            int result = mapping.getResult(squares, 1 - sideToMove);
+                            if (result == Tablebases.DRAW) {
+                                hasEscape = true;
+                            } else if (Tablebases.isLoss(result)) {
+                                shortestWin = Math.min(shortestWin, Tablebases.getDistanceToMate(result) + 1);
+                            } else {
+                                longestLoss = Math.max(longestLoss, Tablebases.getDistanceToMate(result) + 1);
+                            }
+                        }
+                    } else {
+                        inEndgameMoveCount++;
+                    }
+                }
+
+                squares[slot] = currentSquare;
+                if (capturedSlot != NO_SQUARE) {
+                    squares[capturedSlot] = targetSquare;
+                }
+            }
+        }
+
+        if (!hasLegalMove) {
+            // Checkmate is a loss in no plies, and stalemate a draw
+            if (isKingAttacked(sideToMove)) {
+                setResult(index, 0);
+            }
+            return;
+        }
+        remainingMoves[index] = (byte) (inEndgameMoveCount | (hasEscape ? ESCAPE_FLAG : 0));
+        conversionLosses[index] = (byte) (longestLoss + 1);
+        if (shortestWin != Integer.MAX_VALUE) {
+            // A shorter win within the endgame may still replace this one
+            setResult(index, shortestWin);
+        } else if (inEndgameMoveCount == 0 && !hasEscape) {
+            setResult(index, longestLoss);
+        }
+    }
+
+    // Takes back every move of the player who moved into a position whose result has just been settled
+    private void retractMovesInto(int index, int distance) {
+        int sideToMove = decodeIndex(index);
+        int previousSide = 1 - sideToMove;
+        long occupiedSquares = getOccupiedSquares();
+        boolean isLoss = distance % 2 == 0;
+
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slotColors[slot] != previousSide) {
+                continue;
+            }
+            int currentSquare = squares[slot];
+            long originSquares = getRetractionOrigins(slot, occupiedSquares);
+            while (originSquares != 0) {
+                squares[slot] = Long.numberOfTrailingZeros(originSquares);
+                originSquares &= originSquares - 1;
+                // The earlier position must be legal, with the king of the player now to move out of check
+                if (isKingAttacked(sideToMove)) {
+                    continue;
+                }
+                int previousIndex = EndgameTablebase.getIndex(previousSide, squares, slotCount);
+                int previousResult = results[previousIndex] & 0xFF;
+                if (isLoss) {
+                    if (previousResult == 0 || previousResult > distance + 2) {
+                        setResult(previousIndex, distance + 1);
+                    }
+                } else if (previousResult == 0) {
+                    int remaining = (remainingMoves[previousIndex] & MOVE_COUNT_MASK) - 1;
+                    remainingMoves[previousIndex] = (byte) ((remainingMoves[previousIndex] & ESCAPE_FLAG) | remaining);
+                    if (remaining == 0 && (remainingMoves[previousIndex] & ESCAPE_FLAG) == 0) {
+                        setResult(previousIndex,
+                                Math.max(distance + 1, (conversionLosses[previousIndex] & 0xFF) - 1));
+                    }
+                }
+            }
+            squares[slot] = currentSquare;
+        }
+    }
+
+    private void setResult(int index, int distanceToMate) {
+        results[index] = (byte) (distanceToMate + 1);
+        maxResult = Math.max(maxResult, distanceToMate + 1);
+    }
+
+    // Pieces on distinct squares, pawns off the first and last rows, and the player not to move out of check
+    private boolean isValidPosition(int sideToMove) {
+        long occupiedSquares = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            long squareBit = 1L << squares[slot];
+            if ((occupiedSquares & squareBit) != 0 ||
+                    (slotTypes[slot] == Piece.PieceType.PAWN && isOnFirstOrLastRow(squares[slot]))) {
+                return false;
+            }
+            occupiedSquares |= squareBit;
+        }
+        return !isKingAttacked(1 - sideToMove);
+    }
+
+    private static boolean isOnFirstOrLastRow(int square) {
+        return square < Board.MAX_COLUMNS || square >= (Board.MAX_ROWS - 1) * Board.MAX_COLUMNS;
+    }
+
+    private long getOccupiedSquares() {
+        long occupiedSquares = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (squares[slot] != NO_SQUARE) {
+                occupiedSquares |= 1L << squares[slot];
+            }
+        }
+        return occupiedSquares;
+    }
+
+    private int getSlotAt(int square) {
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (squares[slot] == square) {
+                return slot;
+            }
+        }
+        return NO_SQUARE;
+    }
+
+    private boolean isKingAttacked(int color) {
+        long kingBit = 1L << squares[color];
+        long occupiedSquares = getOccupiedSquares();
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slotColors[slot] != color && squares[slot] != NO_SQUARE &&
+                    (getAttacks(slot, occupiedSquares) & kingBit) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long getAttacks(int slot, long occupiedSquares) {
+        int square = squares[slot];
+        switch (slotTypes[slot]) {
+            case KING:
+                return AttackTables.getKingAttacks(square);
+            case KNIGHT:
+                return AttackTables.getKnightAttacks(square);
+            case BISHOP:
+                return AttackTables.getBishopAttacks(square, occupiedSquares);
+            case ROOK:
+                return AttackTables.getRookAttacks(square, occupiedSquares);
+            case QUEEN:
+                return AttackTables.getQueenAttacks(square, occupiedSquares);
+            default:
+                return AttackTables.getPawnAttacks(COLORS[slotColors[slot]], square);
+        }
+    }
+
+    // The squares a piece can move to, other than its own side's squares and the opposing king's
+    private long getMoveTargets(int slot, long occupiedSquares) {
+        int color = slotColors[slot];
+        long ownSquares = 0;
+        long opponentPieceSquares = 0;
+        for (int otherSlot = 2; otherSlot < slotCount; otherSlot++) {
+            if (slotColors[otherSlot] == color) {
+                ownSquares |= 1L << squares[otherSlot];
+            } else {
+                opponentPieceSquares |= 1L << squares[otherSlot];
+            }
+        }
+        ownSquares |= 1L << squares[color];
+        if (slotTypes[slot] != Piece.PieceType.PAWN) {
+            return getAttacks(slot, occupiedSquares) & ~ownSquares & ~(1L << squares[1 - color]);
+        }
+
+        int square = squares[slot];
+        int step = (color == WHITE) ? -Board.MAX_COLUMNS : Board.MAX_COLUMNS;
+        int startingRow = (color == WHITE) ? Board.MAX_ROWS - 2 : 1;
+        long targetSquares = getAttacks(slot, occupiedSquares) & opponentPieceSquares;
+        if ((occupiedSquares & (1L << (square + step))) == 0) {
+            targetSquares |= 1L << (square + step);
+            if (square / Board.MAX_COLUMNS == startingRow && (occupiedSquares & (1L << (square + 2 * step))) == 0) {
+                targetSquares |= 1L << (square + 2 * step);
+            }
+        }
+        return targetSquares;
+    }
+
+    // The empty squares a piece could have come from by a move that did not capture. A pawn cannot have come from
+    // its first row, and only comes from two rows back if it now stands where a double step from its starting row
+    // ends.
+    private long getRetractionOrigins(int slot, long occupiedSquares) {
+        if (slotTypes[slot] != Piece.PieceType.PAWN) {
+            return getAttacks(slot, occupiedSquares) & ~occupiedSquares;
+        }
+        int color = slotColors[slot];
+        int square = squares[slot];
+        int backStep = (color == WHITE) ? Board.MAX_COLUMNS : -Board.MAX_COLUMNS;
+        int doubleStepRow = (color == WHITE) ? Board.MAX_ROWS - 4 : 3;
+        int originRow = square / Board.MAX_COLUMNS + ((color == WHITE) ? 1 : -1);
+        if (originRow < 1 || originRow > Board.MAX_ROWS - 2 || (occupiedSquares & (1L << (square + backStep))) != 0) {
+            return 0;
+        }
+        long originSquares = 1L << (square + backStep);
+        if (square / Board.MAX_COLUMNS == doubleStepRow &&
+                (occupiedSquares & (1L << (square + 2 * backStep))) == 0) {
+            originSquares |= 1L << (square + 2 * backStep);
+        }
+        return originSquares;
+    }
+}
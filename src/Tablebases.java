@@ -0,0 +1,298 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The endgame tablebases loaded in this process, and the probe that answers a board's exact result from them.
+// Endgames are named by their pieces, white's then black's, each side's in the order QRBNP, such as "KRK" or "KQKR".
+// Each endgame is stored once, with white as the stronger side; positions where black has the stronger pieces are
+// probed through the same table with the board mirrored and the colors swapped. Endgames without enough material to
+// mate, such as KK and KBK, need no table at all.
+// Usage: java Tablebases <directory> [endgames...] generates, or loads, the endgames and reports on them
+final class Tablebases {
+    // Probe results: NOT_FOUND when no table covers the position, DRAW, or else the distance to mate in plies plus
+    // one. A side to move that wins needs an odd number of plies to mate, and one that loses an even number.
+    static final int NOT_FOUND = -1;
+    static final int DRAW = 0;
+
+    // Five pieces would need 2^31 positions per table, beyond what an array index can reach
+    static final int MAX_PIECES = 4;
+    static final String[] DEFAULT_ENDGAMES = {"KQK", "KRK", "KPK", "KBNK"};
+
+    private static final String PIECE_ORDER = "QRBNP";
+    private static final Piece.PieceType[] PIECE_ORDER_TYPES = {Piece.PieceType.QUEEN, Piece.PieceType.ROOK,
+            Piece.PieceType.BISHOP, Piece.PieceType.KNIGHT, Piece.PieceType.PAWN};
+    private static final int[] PIECE_ORDER_VALUES = {9, 5, 3, 3, 1};
+    private static final String FILE_EXTENSION = ".tb";
+    private static final int FLIP_ROWS = 56;
+
+    private static final Map<String, EndgameTablebase> tables = new ConcurrentHashMap<>();
+    private static volatile Path directory;
+
+    private Tablebases() {
+    }
+
+    // Maps how a set of pieces is found in a table: which of the caller's squares fills each of the table's, and
+    // whether the board has to be mirrored first. A null table means the position is a draw.
+    static final class TableMapping {
+        private final EndgameTablebase table;
+        private final boolean isFlipped;
+        private final int[] slotOrder;
+        private final int[] tableSquares;
+
+        private TableMapping(EndgameTablebase table, boolean isFlipped, int[] slotOrder) {
+            this.table = table;
+            this.isFlipped = isFlipped;
+            this.slotOrder = slotOrder;
+            tableSquares = new int[slotOrder.length];
+        }
+
+        // Not safe to call from several threads at once, since the mapping reuses its square buffer
+        int getResult(int[] squares, int sideToMove) {
+            if (table == null) {
+                return DRAW;
+            }
+            for (int i = 0; i < slotOrder.length; i++) {
+                tableSquares[i] = isFlipped ? squares[slotOrder[i]] ^ FLIP_ROWS : squares[slotOrder[i]];
+            }
+            int tableSideToMove = isFlipped ? 1 - sideToMove : sideToMove;
+            return table.getResult(EndgameTablebase.getIndex(tableSideToMove, tableSquares, slotOrder.length));
+        }
+    }
+
+    // Loads the endgames from the directory, generating and saving any that are missing, together with the smaller
+    // endgames their captures and promotions lead to
+    static void load(Path tablebaseDirectory, String... endgameNames) throws IOException {
+        Files.createDirectories(tablebaseDirectory);
+        directory = tablebaseDirectory;
+        for (String endgameName : endgameNames) {
+            Piece.Color[] colors = new Piece.Color[MAX_PIECES];
+            Piece.PieceType[] pieceTypes = new Piece.PieceType[MAX_PIECES];
+            loadWithConversions(colors, pieceTypes, parseEndgameName(endgameName, colors, pieceTypes));
+        }
+    }
+
+    // Tables already on disk do not pull in the endgames they convert into, so those are loaded here, one capture or
+    // promotion at a time
+    private static void loadWithConversions(Piece.Color[] colors, Piece.PieceType[] pieceTypes, int pieceCount) {
+        int[] slots = new int[pieceCount];
+        for (int i = 0; i < pieceCount; i++) {
+            slots[i] = i + 2;
+        }
+        findMapping(colors, pieceTypes, slots, pieceCount, true);
+        for (int i = 0; i < pieceCount; i++) {
+            Piece.Color[] remainingColors = new Piece.Color[MAX_PIECES];
+            Piece.PieceType[] remainingPieceTypes = new Piece.PieceType[MAX_PIECES];
+            int remainingCount = 0;
+            for (int j = 0; j < pieceCount; j++) {
+                if (j != i) {
+                    remainingColors[remainingCount] = colors[j];
+                    remainingPieceTypes[remainingCount++] = pieceTypes[j];
+                }
+            }
+            loadWithConversions(remainingColors, remainingPieceTypes, remainingCount);
+            if (pieceTypes[i] == Piece.PieceType.PAWN) {
+                Piece.PieceType[] promotedPieceTypes = pieceTypes.clone();
+                for (Piece.PieceType promotionPieceType : Piece.PROMOTION_PIECE_TYPES) {
+                    promotedPieceTypes[i] = promotionPieceType;
+                    loadWithConversions(colors, promotedPieceTypes, pieceCount);
+                }
+            }
+        }
+    }
+
+    static boolean isLoaded(String endgameName) {
+        return tables.containsKey(endgameName);
+    }
+
+    // Returns the exact result for the board's turn player, or NOT_FOUND if its endgame is not loaded. Positions with
+    // castling rights are never in a table.
+    static int probe(Board board) {
+        long occupiedSquares = board.getOccupiedSquares();
+        if (Long.bitCount(occupiedSquares) > MAX_PIECES || board.getCastlingRights() != 0) {
+            return NOT_FOUND;
+        }
+        int[] squares = new int[MAX_PIECES];
+        Piece.Color[] colors = new Piece.Color[MAX_PIECES];
+        Piece.PieceType[] pieceTypes = new Piece.PieceType[MAX_PIECES];
+        int[] slots = new int[MAX_PIECES];
+        squares[0] = Long.numberOfTrailingZeros(board.getPieceBitboard(Piece.Color.WHITE, Piece.PieceType.KING));
+        squares[1] = Long.numberOfTrailingZeros(board.getPieceBitboard(Piece.Color.BLACK, Piece.PieceType.KING));
+        int pieceCount = 0;
+        for (Piece.Color color : Piece.Color.values()) {
+            for (Piece.PieceType pieceType : PIECE_ORDER_TYPES) {
+                long pieces = board.getPieceBitboard(color, pieceType);
+                while (pieces != 0) {
+                    squares[pieceCount + 2] = Long.numberOfTrailingZeros(pieces);
+                    pieces &= pieces - 1;
+                    colors[pieceCount] = color;
+                    pieceTypes[pieceCount] = pieceType;
+                    slots[pieceCount] = pieceCount + 2;
+                    pieceCount++;
+                }
+            }
+        }
+        TableMapping mapping = findMapping(colors, pieceTypes, slots, pieceCount, false);
+        if (mapping == null) {
+            return NOT_FOUND;
+        }
+        return mapping.getResult(squares, (board.getTurnPlayerColor() == Piece.Color.WHITE) ? 0 : 1);
+    }
+
+    static boolean isWin(int result) {
+        return result > 0 && (result - 1) % 2 == 1;
+    }
+
+    static boolean isLoss(int result) {
+        return result > 0 && (result - 1) % 2 == 0;
+    }
+
+    static int getDistanceToMate(int result) {
+        return result - 1;
+    }
+
+    // Finds the table holding the given pieces besides the kings, whose squares are at the given slots of the
+    // caller's square array, with the kings at slots 0 and 1. If the table is not loaded it is generated when asked
+    // to, and otherwise null is returned.
+    static TableMapping findMapping(Piece.Color[] colors, Piece.PieceType[] pieceTypes, int[] slots, int pieceCount,
+                                    boolean isGenerating) {
+        StringBuilder whitePieces = new StringBuilder(MAX_PIECES);
+        StringBuilder blackPieces = new StringBuilder(MAX_PIECES);
+        int[] whiteSlots = new int[pieceCount];
+        int[] blackSlots = new int[pieceCount];
+        for (int order = 0; order < PIECE_ORDER.length(); order++) {
+            for (int i = 0; i < pieceCount; i++) {
+                if (pieceTypes[i] != PIECE_ORDER_TYPES[order]) {
+                    continue;
+                }
+                if (colors[i] == Piece.Color.WHITE) {
+                    whiteSlots[whitePieces.length()] = slots[i];
+                    whitePieces.append(PIECE_ORDER.charAt(order));
+                } else {
+                    blackSlots[blackPieces.length()] = slots[i];
+                    blackPieces.append(PIECE_ORDER.charAt(order));
+                }
+            }
+        }
+
+        boolean isFlipped = compareSides(whitePieces, blackPieces) < 0;
+        StringBuilder strongerPieces = isFlipped ? blackPieces : whitePieces;
+        StringBuilder weakerPieces = isFlipped ? whitePieces : blackPieces;
+        int[] slotOrder = new int[pieceCount + 2];
+        slotOrder[0] = isFlipped ? 1 : 0;
+        slotOrder[1] = isFlipped ? 0 : 1;
+        System.arraycopy(isFlipped ? blackSlots : whiteSlots, 0, slotOrder, 2, strongerPieces.length());
+        System.arraycopy(isFlipped ? whiteSlots : blackSlots, 0, slotOrder, 2 + strongerPieces.length(),
+                weakerPieces.length());
+
+        if (!hasMatingMaterial(strongerPieces, weakerPieces)) {
+            return new TableMapping(null, isFlipped, slotOrder);
+        }
+        String endgameName = "K" + strongerPieces + "K" + weakerPieces;
+        EndgameTablebase table = tables.get(endgameName);
+        if (table == null) {
+            if (!isGenerating) {
+                return null;
+            }
+            table = loadOrGenerate(endgameName);
+        }
+        return new TableMapping(table, isFlipped, slotOrder);
+    }
+
+    private static synchronized EndgameTablebase loadOrGenerate(String endgameName) {
+        EndgameTablebase table = tables.get(endgameName);
+        if (table != null) {
+            return table;
+        }
+        Piece.Color[] colors = new Piece.Color[MAX_PIECES];
+        Piece.PieceType[] pieceTypes = new Piece.PieceType[MAX_PIECES];
+        int pieceCount = parseEndgameName(endgameName, colors, pieceTypes) + 2;
+        Path path = directory.resolve(endgameName + FILE_EXTENSION);
+        try {
+            if (!Files.exists(path)) {
+                byte[] results = new TablebaseGenerator(colors, pieceTypes, pieceCount - 2).generate();
+                EndgameTablebase.write(path, results);
+            }
+            table = EndgameTablebase.open(path, endgameName, pieceCount);
+        } catch (IOException e) {
+            throw new IllegalStateException("The " + endgameName + " tablebase could not be saved or read", e);
+        }
+        tables.put(endgameName, table);
+        return table;
+    }
+
+    // Fills in the colors and types of the pieces besides the kings, and returns how many there are
+    private static int parseEndgameName(String endgameName, Piece.Color[] colors, Piece.PieceType[] pieceTypes) {
+        int blackKingIndex = endgameName.indexOf('K', 1);
+        if (!endgameName.startsWith("K") || blackKingIndex < 0 || endgameName.length() - 2 > MAX_PIECES - 2) {
+            throw new IllegalArgumentException("An endgame is named like KRK or KQKR, with at most " + MAX_PIECES +
+                    " pieces: " + endgameName);
+        }
+        int pieceCount = 0;
+        boolean hasWhitePawns = false;
+        boolean hasBlackPawns = false;
+        for (int i = 1; i < endgameName.length(); i++) {
+            if (i == blackKingIndex) {
+                continue;
+            }
+            int order = PIECE_ORDER.indexOf(endgameName.charAt(i));
+            if (order < 0) {
+                throw new IllegalArgumentException("Unknown piece '" + endgameName.charAt(i) + "' in endgame " +
+                        endgameName);
+            }
+            colors[pieceCount] = (i < blackKingIndex) ? Piece.Color.WHITE : Piece.Color.BLACK;
+            pieceTypes[pieceCount] = PIECE_ORDER_TYPES[order];
+            hasWhitePawns |= pieceTypes[pieceCount] == Piece.PieceType.PAWN && colors[pieceCount] == Piece.Color.WHITE;
+            hasBlackPawns |= pieceTypes[pieceCount] == Piece.PieceType.PAWN && colors[pieceCount] == Piece.Color.BLACK;
+            pieceCount++;
+        }
+        // The index has no room for an en passant square, which only matters when both sides have pawns
+        if (hasWhitePawns && hasBlackPawns) {
+            throw new IllegalArgumentException("Endgames with pawns on both sides are not supported: " + endgameName);
+        }
+        return pieceCount;
+    }
+
+    // Orders two sides' pieces by material, then by name, so that each endgame has a single stronger side
+    private static int compareSides(CharSequence pieces, CharSequence otherPieces) {
+        int valueDifference = getMaterialValue(pieces) - getMaterialValue(otherPieces);
+        if (valueDifference != 0) {
+            return valueDifference;
+        }
+        return otherPieces.toString().compareTo(pieces.toString());
+    }
+
+    private static int getMaterialValue(CharSequence pieces) {
+        int value = 0;
+        for (int i = 0; i < pieces.length(); i++) {
+            value += PIECE_ORDER_VALUES[PIECE_ORDER.indexOf(pieces.charAt(i))];
+        }
+        return value;
+    }
+
+    // A lone king, or a king with one bishop or knight against a lone king, can never be mated
+    private static boolean hasMatingMaterial(CharSequence strongerPieces, CharSequence weakerPieces) {
+        if (weakerPieces.length() > 0 || strongerPieces.length() > 1) {
+            return true;
+        }
+        return strongerPieces.length() == 1 && strongerPieces.charAt(0) != 'B' && strongerPieces.charAt(0) != 'N';
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java Tablebases <directory> [endgames...]");
+            return;
+        }
+        String[] endgameNames = DEFAULT_ENDGAMES;
+        if (args.length > 1) {
+            endgameNames = new String[args.length - 1];
+            System.arraycopy(args, 1, endgameNames, 0, endgameNames.length);
+        }
+        long startTime = System.nanoTime();
+        load(Paths.get(args[0]), endgameNames);
+        System.out.println(String.format("Loaded %s in %d ms", tables.keySet(),
+                (System.nanoTime() - startTime) / 1000000L));
+    }
+}
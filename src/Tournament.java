@@ -0,0 +1,168 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Plays a match between two search players with no one at the keyboard, many games at once, and reports the score
+// and throughput. It is meant for checking that a change to the engine is not a regression: with node limits the
+// players are deterministic, so a match is repeatable.
+// Games are played in pairs from the same opening, each player taking white once. Each opening is a few random moves
+// from the starting position, chosen from the pair number so that every run uses the same openings.
+// Each worker thread keeps its own pair of players, so their transposition tables are allocated once per thread and
+// never shared between games.
+// Games that reach an endgame in the tablebases are adjudicated there, so a tablebase directory saves playing out
+// decided endings; missing tables are generated into it first. An empty archive name writes no archive.
+// Usage: java Tournament [games] [threads] [nodes per move A] [nodes per move B] [archive] [tablebase directory]
+class Tournament {
+    private static final int DEFAULT_GAME_COUNT = 100;
+    private static final long DEFAULT_NODE_LIMIT = 20000;
+    private static final int OPENING_PLIES = 8;
+    private static final int MAX_PLIES = 400;
+    private static final int TRANSPOSITION_TABLE_MEGABYTES = 4;
+    private static final long RANDOM_SEED = 20181018L;
+
+    // Indices into the outcome counts
+    private static final int PLAYER_A_WINS = 0;
+    private static final int DRAWS = 1;
+    private static final int PLAYER_B_WINS = 2;
+    private static final int UNFINISHED = 3;
+
+    private final int gameCount;
+    private final long playerANodeLimit;
+    private final long playerBNodeLimit;
+    private final GameArchiveWriter archiveWriter;
+    private final ThreadLocal<Player[]> threadPlayers;
+    private final AtomicLongArray outcomeCounts = new AtomicLongArray(4);
+    private final AtomicLongArray terminationCounts = new AtomicLongArray(HeadlessGame.Termination.values().length);
+    private final AtomicLong plyCount = new AtomicLong();
+
+    private Tournament(int gameCount, long playerANodeLimit, long playerBNodeLimit, GameArchiveWriter archiveWriter) {
+        this.gameCount = gameCount;
+        this.playerANodeLimit = playerANodeLimit;
+        this.playerBNodeLimit = playerBNodeLimit;
+        this.archiveWriter = archiveWriter;
+        threadPlayers = ThreadLocal.withInitial(() -> new Player[]{
+                new SearchPlayer("A", 0, this.playerANodeLimit, 0, TRANSPOSITION_TABLE_MEGABYTES),
+                new SearchPlayer("B", 0, this.playerBNodeLimit, 0, TRANSPOSITION_TABLE_MEGABYTES)});
+    }
+
+    private void run(int threadCount) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long startTime = System.nanoTime();
+        try {
+            Future<?>[] games = new Future<?>[gameCount];
+            for (int i = 0; i < gameCount; i++) {
+                int gameIndex = i;
+                games[i] = executor.submit(() -> {
+                    playGame(gameIndex);
+                    return null;
+                });
+            }
+            for (Future<?> game : games) {
+                game.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        printReport(System.nanoTime() - startTime, threadCount);
+    }
+
+    private void playGame(int gameIndex) throws IOException {
+        Player[] players = threadPlayers.get();
+        boolean isPlayerAWhite = gameIndex % 2 == 0;
+        Player whitePlayer = isPlayerAWhite ? players[0] : players[1];
+        Player blackPlayer = isPlayerAWhite ? players[1] : players[0];
+        HeadlessGame game = new HeadlessGame(whitePlayer, blackPlayer, getOpeningFen(gameIndex / 2), MAX_PLIES);
+        String result = game.play();
+
+        int outcome;
+        if (result.equals(PgnReader.RESULT_DRAW)) {
+            outcome = DRAWS;
+        } else if (result.equals(PgnReader.RESULT_UNKNOWN)) {
+            outcome = UNFINISHED;
+        } else {
+            outcome = (result.equals(PgnReader.RESULT_WHITE_WINS) == isPlayerAWhite) ? PLAYER_A_WINS : PLAYER_B_WINS;
+        }
+        outcomeCounts.incrementAndGet(outcome);
+        terminationCounts.incrementAndGet(game.getTermination().ordinal());
+        plyCount.addAndGet(game.getMoveCount());
+
+        if (archiveWriter != null) {
+            synchronized (archiveWriter) {
+                archiveWriter.writeGame(game.getStartFen(), game.getMoves(), game.getMoveCount(), result);
+            }
+        }
+    }
+
+    // Plays random moves from the starting position, trying another line in the rare case that one ends the game
+    private static String getOpeningFen(int openingIndex) {
+        Random random = new Random(RANDOM_SEED + openingIndex);
+        Board board = new Board();
+        int[] moveBuffer = new int[Move.MAX_MOVES];
+        while (true) {
+            board.initializeBoardLayout();
+            int ply = 0;
+            for (; ply < OPENING_PLIES; ply++) {
+                int legalMoveCount = board.getAllPiecesLegalMoves(moveBuffer);
+                if (legalMoveCount == 0) {
+                    break;
+                }
+                board.makeMove(moveBuffer[random.nextInt(legalMoveCount)]);
+            }
+            if (ply == OPENING_PLIES && HeadlessGame.getTermination(board) == null) {
+                return board.toFen();
+            }
+        }
+    }
+
+    private void printReport(long elapsedNanoseconds, int threadCount) {
+        long playerAWins = outcomeCounts.get(PLAYER_A_WINS);
+        long draws = outcomeCounts.get(DRAWS);
+        long playerBWins = outcomeCounts.get(PLAYER_B_WINS);
+        long finishedGames = playerAWins + draws + playerBWins;
+        double elapsedSeconds = Math.max(1, elapsedNanoseconds) / 1e9;
+
+        System.out.println(String.format("%d games, A (%d nodes/move) vs B (%d nodes/move), %d threads", gameCount,
+                playerANodeLimit, playerBNodeLimit, threadCount));
+        System.out.println(String.format("A wins %d, draws %d, B wins %d, unfinished %d", playerAWins, draws,
+                playerBWins, outcomeCounts.get(UNFINISHED)));
+        if (finishedGames > 0) {
+            System.out.println(String.format("A scores %.1f%%", 100.0 * (playerAWins + 0.5 * draws) / finishedGames));
+        }
+        for (HeadlessGame.Termination termination : HeadlessGame.Termination.values()) {
+            System.out.println(String.format("  %-22s %d", termination, terminationCounts.get(termination.ordinal())));
+        }
+        System.out.println(String.format("%.1f s, %.2f games/sec, %.1f plies/sec", elapsedSeconds,
+                gameCount / elapsedSeconds, plyCount.get() / elapsedSeconds));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int gameCount = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_GAME_COUNT;
+        int threadCount = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long playerANodeLimit = (args.length > 2) ? Long.parseLong(args[2]) : DEFAULT_NODE_LIMIT;
+        long playerBNodeLimit = (args.length > 3) ? Long.parseLong(args[3]) : playerANodeLimit;
+        if (gameCount < 1 || threadCount < 1 || playerANodeLimit < 1 || playerBNodeLimit < 1) {
+            throw new IllegalArgumentException("The game count, thread count and node limits must be positive");
+        }
+
+        if (args.length > 5) {
+            Tablebases.load(Paths.get(args[5]), Tablebases.DEFAULT_ENDGAMES);
+        }
+
+        if (args.length > 4 && !args[4].isEmpty()) {
+            try (GameArchiveWriter archiveWriter = GameArchiveWriter.openForAppending(Paths.get(args[4]))) {
+                new Tournament(gameCount, playerANodeLimit, playerBNodeLimit, archiveWriter).run(threadCount);
+            }
+        } else {
+            new Tournament(gameCount, playerANodeLimit, playerBNodeLimit, null).run(threadCount);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.Arrays;
+
+// A fixed-size table of search results keyed by Zobrist key, so that a position reached by a different move order is
+// not searched again. Entries live in one preallocated long[] as pairs of words: the packed data, and the key XORed
+// with the data. A reader only accepts an entry whose words XOR back to its key, so an entry torn by two threads
+// writing at once is simply treated as a miss, and the table can be shared between search threads without locking.
+// Entries are grouped into buckets of four, and a new result replaces the bucket's least useful entry: one left from
+// an earlier search, or otherwise the shallowest.
+final class TranspositionTable {
+    static final long NO_ENTRY = 0L;
+    static final int BOUND_EXACT = 1;
+    static final int BOUND_LOWER = 2;
+    static final int BOUND_UPPER = 3;
+
+    private static final int WORDS_PER_ENTRY = 2;
+    private static final int ENTRIES_PER_BUCKET = 4;
+    private static final int BYTES_PER_BUCKET = WORDS_PER_ENTRY * ENTRIES_PER_BUCKET * Long.BYTES;
+
+    // Data word layout: bits 0-19 move, 20-39 score offset by SCORE_OFFSET, 40-46 depth, 47-48 bound, 49-56 age
+    private static final int SCORE_SHIFT = 20;
+    private static final int DEPTH_SHIFT = 40;
+    private static final int BOUND_SHIFT = 47;
+    private static final int AGE_SHIFT = 49;
+    private static final long MOVE_MASK = 0xFFFFFL;
+    private static final long SCORE_MASK = 0xFFFFFL;
+    private static final long DEPTH_MASK = 0x7FL;
+    private static final long BOUND_MASK = 0x3L;
+    private static final long AGE_MASK = 0xFFL;
+    private static final int SCORE_OFFSET = 1 << 19;
+
+    private final long[] entries;
+    private final long bucketIndexMask;
+    private volatile int currentAge;
+
+    // The bucket count is rounded down to a power of two so that a bucket can be picked with a mask
+    TranspositionTable(int sizeInMegabytes) {
+        long bucketCount = Long.highestOneBit(Math.max(1L, (long) sizeInMegabytes * 1024 * 1024 / BYTES_PER_BUCKET));
+        bucketIndexMask = bucketCount - 1;
+        entries = new long[(int) (bucketCount * WORDS_PER_ENTRY * ENTRIES_PER_BUCKET)];
+    }
+
+    // Called once per move by the table's owner, however many searches share the table, so that entries from earlier
+    // moves are the first to be replaced. Never called while a search is using the table.
+    void incrementAge() {
+        currentAge = (int) ((currentAge + 1) & AGE_MASK);
+    }
+
+    void clear() {
+        Arrays.fill(entries, 0L);
+        currentAge = 0;
+    }
+
+    // Returns the entry's data word, or NO_ENTRY if the position is not in the table
+    long probe(long zobristKey) {
+        int bucketStart = getBucketStart(zobristKey);
+        for (int i = bucketStart; i < bucketStart + WORDS_PER_ENTRY * ENTRIES_PER_BUCKET; i += WORDS_PER_ENTRY) {
+            long data = entries[i];
+            if ((entries[i + 1] ^ data) == zobristKey && data != NO_ENTRY) {
+                return data;
+            }
+        }
+        return NO_ENTRY;
+    }
+
+    void store(long zobristKey, int move, int score, int depth, int bound) {
+        int bucketStart = getBucketStart(zobristKey);
+        int replacedIndex = bucketStart;
+        int lowestReplacementValue = Integer.MAX_VALUE;
+        for (int i = bucketStart; i < bucketStart + WORDS_PER_ENTRY * ENTRIES_PER_BUCKET; i += WORDS_PER_ENTRY) {
+            long data = entries[i];
+            if ((entries[i + 1] ^ data) == zobristKey || data == NO_ENTRY) {
+                // A result without a best move, such as a fail-low, keeps the move already stored for the position
+                if (move == Move.NO_MOVE && data != NO_ENTRY) {
+                    move = getMove(data);
+                }
+                replacedIndex = i;
+                break;
+            }
+            int ageDifference = (int) ((currentAge - getAge(data)) & AGE_MASK);
+            int replacementValue = getDepth(data) - 8 * ageDifference;
+            if (replacementValue < lowestReplacementValue) {
+                lowestReplacementValue = replacementValue;
+                replacedIndex = i;
+            }
+        }
+
+        long data = (move & MOVE_MASK) |
+                ((long) (score + SCORE_OFFSET) & SCORE_MASK) << SCORE_SHIFT |
+                ((long) depth & DEPTH_MASK) << DEPTH_SHIFT |
+                ((long) bound & BOUND_MASK) << BOUND_SHIFT |
+                ((long) currentAge & AGE_MASK) << AGE_SHIFT;
+        entries[replacedIndex] = data;
+        entries[replacedIndex + 1] = zobristKey ^ data;
+    }
+
+    private int getBucketStart(long zobristKey) {
+        return (int) (zobristKey & bucketIndexMask) * WORDS_PER_ENTRY * ENTRIES_PER_BUCKET;
+    }
+
+    static int getMove(long data) {
+        return (int) (data & MOVE_MASK);
+    }
+
+    static int getScore(long data) {
+        return (int) ((data >>> SCORE_SHIFT) & SCORE_MASK) - SCORE_OFFSET;
+    }
+
+    static int getDepth(long data) {
+        return (int) ((data >>> DEPTH_SHIFT) & DEPTH_MASK);
+    }
+
+    static int getBound(long data) {
+        return (int) ((data >>> BOUND_SHIFT) & BOUND_MASK);
+    }
+
+    private static int getAge(long data) {
+        return (int) ((data >>> AGE_SHIFT) & AGE_MASK);
+    }
+}
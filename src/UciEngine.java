@@ -0,0 +1,333 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+// Runs the engine under the Universal Chess Interface, so that GUIs and tournament managers can drive it over standard
+// input and output. Commands are read on the main thread, while each search runs on a thread of its own, so commands
+// such as isready and stop are answered while the engine thinks. The search reports an info line with its depth,
+// score, node count, speed and principal variation after each completed iteration, and checks for a stop request
+// every few thousand nodes, so that stop is answered with a best move within a few milliseconds.
+// The Threads option runs that many searches at once through ParallelSearch, and once a search ends, its node count
+// for each thread is reported as an info string.
+// Moves are written in UCI's long algebraic notation, such as e2e4, e1g1 for castling and e7e8q for a promotion.
+// Usage: java UciEngine
+class UciEngine {
+    private static final String ENGINE_NAME = "BasicChess";
+    private static final String ENGINE_AUTHOR = "Chad Fraser";
+    private static final int DEFAULT_HASH_MEGABYTES = 64;
+    private static final int MAX_HASH_MEGABYTES = 1024;
+    private static final int MAX_THREADS = 64;
+    private static final String NULL_MOVE = "0000";
+    // With a clock but no moves-to-go, the time left is shared out as if this many moves remained
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+    // Kept back from the clock for the time it takes to stop the search and send the move
+    private static final long MOVE_OVERHEAD_MILLISECONDS = 50;
+
+    private final BufferedReader input;
+    private final PrintStream output;
+    private final Board board = new Board();
+    private final int[] legalMoveBuffer = new int[Move.MAX_MOVES];
+    private TranspositionTable transpositionTable = new TranspositionTable(DEFAULT_HASH_MEGABYTES);
+    private int threadCount = 1;
+    private ParallelSearch search;
+    private Thread searchThread;
+    // Set by go infinite: the best move is only sent once stop arrives, even if the search ends before then
+    private boolean isWaitingForStop;
+
+    private UciEngine(BufferedReader input, PrintStream output) {
+        this.input = input;
+        this.output = output;
+        board.initializeBoardLayout();
+    }
+
+    private void run() throws IOException {
+        String line;
+        while ((line = input.readLine()) != null) {
+            String[] tokens = line.trim().split("\\s+");
+            switch (tokens[0]) {
+                case "uci":
+                    send("id name " + ENGINE_NAME);
+                    send("id author " + ENGINE_AUTHOR);
+                    send("option name Hash type spin default " + DEFAULT_HASH_MEGABYTES + " min 1 max " +
+                            MAX_HASH_MEGABYTES);
+                    send("option name Threads type spin default 1 min 1 max " + MAX_THREADS);
+                    send("uciok");
+                    break;
+                case "isready":
+                    send("readyok");
+                    break;
+                case "ucinewgame":
+                    stopSearch();
+                    transpositionTable.clear();
+                    break;
+                case "setoption":
+                    stopSearch();
+                    setOption(tokens);
+                    break;
+                case "position":
+                    stopSearch();
+                    setPosition(tokens);
+                    break;
+                case "go":
+                    stopSearch();
+                    startSearch(tokens);
+                    break;
+                case "stop":
+                    stopSearch();
+                    break;
+                case "quit":
+                    stopSearch();
+                    return;
+                default:
+                    // Unknown commands, and ones this engine has no use for such as ponderhit, are ignored as UCI asks
+                    break;
+            }
+        }
+        stopSearch();
+    }
+
+    // setoption name (Hash | Threads) value <number>
+    private void setOption(String[] tokens) {
+        if (tokens.length < 5 || !tokens[1].equals("name") || !tokens[3].equals("value")) {
+            return;
+        }
+        try {
+            if (tokens[2].equalsIgnoreCase("Hash")) {
+                int hashMegabytes = Math.max(1, Math.min(MAX_HASH_MEGABYTES, Integer.parseInt(tokens[4])));
+                transpositionTable = new TranspositionTable(hashMegabytes);
+            } else if (tokens[2].equalsIgnoreCase("Threads")) {
+                threadCount = Math.max(1, Math.min(MAX_THREADS, Integer.parseInt(tokens[4])));
+            }
+        } catch (NumberFormatException e) {
+            send("info string Invalid " + tokens[2] + " value: " + tokens[4]);
+        }
+    }
+
+    // position (startpos | fen <fen>) [moves <move>...]
+    private void setPosition(String[] tokens) {
+        int index = 1;
+        try {
+            if (tokens.length > 1 && tokens[1].equals("startpos")) {
+                board.initializeBoardLayout();
+                index = 2;
+            } else if (tokens.length > 1 && tokens[1].equals("fen")) {
+                StringBuilder fen = new StringBuilder();
+                for (index = 2; index < tokens.length && !tokens[index].equals("moves"); index++) {
+                    fen.append(tokens[index]).append(' ');
+                }
+                board.loadFen(fen.toString().trim());
+            } else {
+                send("info string Expected startpos or fen after position");
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            send("info string Invalid FEN: " + e.getMessage());
+            board.initializeBoardLayout();
+            return;
+        }
+
+        if (index < tokens.length && tokens[index].equals("moves")) {
+            for (index++; index < tokens.length; index++) {
+                int move = parseMove(tokens[index]);
+                if (move == Move.NO_MOVE) {
+                    // Searching from partway through the moves would answer for a position the GUI never sent
+                    send("info string Illegal move: " + tokens[index]);
+                    board.initializeBoardLayout();
+                    return;
+                }
+                board.makeMove(move);
+            }
+        }
+    }
+
+    // go [wtime <ms>] [btime <ms>] [winc <ms>] [binc <ms>] [movestogo <n>] [depth <n>] [nodes <n>] [movetime <ms>]
+    // [infinite]
+    private void startSearch(String[] tokens) {
+        long timeLeft = 0;
+        long increment = 0;
+        int movesToGo = DEFAULT_MOVES_TO_GO;
+        long moveTime = 0;
+        long nodeLimit = 0;
+        int maxDepth = 0;
+        boolean isInfinite = false;
+        boolean isWhite = board.getTurnPlayerColor() == Piece.Color.WHITE;
+        try {
+            for (int i = 1; i < tokens.length; i++) {
+                boolean hasValue = i + 1 < tokens.length;
+                switch (tokens[i]) {
+                    case "wtime":
+                    case "btime":
+                        if (hasValue && tokens[i].equals(isWhite ? "wtime" : "btime")) {
+                            timeLeft = Math.max(1, Long.parseLong(tokens[i + 1]));
+                        }
+                        i++;
+                        break;
+                    case "winc":
+                    case "binc":
+                        if (hasValue && tokens[i].equals(isWhite ? "winc" : "binc")) {
+                            increment = Math.max(0, Long.parseLong(tokens[i + 1]));
+                        }
+                        i++;
+                        break;
+                    case "movestogo":
+                        movesToGo = hasValue ? Math.max(1, Integer.parseInt(tokens[++i])) : movesToGo;
+                        break;
+                    case "movetime":
+                        moveTime = hasValue ? Math.max(1, Long.parseLong(tokens[++i])) : moveTime;
+                        break;
+                    case "nodes":
+                        nodeLimit = hasValue ? Long.parseLong(tokens[++i]) : nodeLimit;
+                        break;
+                    case "depth":
+                        maxDepth = hasValue ? Integer.parseInt(tokens[++i]) : maxDepth;
+                        break;
+                    case "infinite":
+                    case "ponder":
+                        isInfinite = true;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (NumberFormatException e) {
+            send("info string Invalid number in go: " + e.getMessage());
+        }
+
+        long timeLimit = moveTime;
+        if (timeLimit == 0 && timeLeft > 0 && !isInfinite) {
+            timeLimit = timeLeft / movesToGo + increment * 3 / 4;
+            timeLimit = Math.max(1, Math.min(timeLimit, timeLeft - MOVE_OVERHEAD_MILLISECONDS));
+        }
+        if (isInfinite) {
+            timeLimit = 0;
+        }
+
+        long timeLimitMilliseconds = timeLimit;
+        long searchNodeLimit = nodeLimit;
+        int searchMaxDepth = maxDepth;
+        long startTime = System.nanoTime();
+        search = new ParallelSearch(board, transpositionTable, threadCount);
+        ParallelSearch runningSearch = search;
+        runningSearch.setIterationListener(completedSearch -> sendSearchInfo(completedSearch,
+                runningSearch.getTotalNodeCount(), startTime));
+        isWaitingForStop = isInfinite;
+        searchThread = new Thread(() -> {
+            int bestMove = runningSearch.findBestMove(timeLimitMilliseconds, searchNodeLimit, searchMaxDepth);
+            sendThreadNodeCounts(runningSearch);
+            waitUntilStopped();
+            send("bestmove " + ((bestMove == Move.NO_MOVE) ? NULL_MOVE : toUciMove(bestMove)));
+        }, "uci-search");
+        searchThread.setDaemon(true);
+        searchThread.start();
+    }
+
+    // Stops any running search and waits for it to send its best move, so that only one search is ever running. A
+    // search thread may not have started searching yet, and starting clears any stop request, so the request is
+    // repeated until the thread has finished.
+    private void stopSearch() {
+        if (searchThread == null) {
+            return;
+        }
+        synchronized (this) {
+            isWaitingForStop = false;
+            notifyAll();
+        }
+        boolean wasInterrupted = false;
+        while (searchThread.isAlive()) {
+            search.stop();
+            try {
+                searchThread.join(1);
+            } catch (InterruptedException e) {
+                wasInterrupted = true;
+            }
+        }
+        if (wasInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+        searchThread = null;
+        search = null;
+    }
+
+    private synchronized void waitUntilStopped() {
+        while (isWaitingForStop) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void sendThreadNodeCounts(ParallelSearch finishedSearch) {
+        StringBuilder info = new StringBuilder("info string nodes per thread");
+        for (long nodeCount : finishedSearch.getNodeCountsPerThread()) {
+            info.append(' ').append(nodeCount);
+        }
+        send(info.toString());
+    }
+
+    // The node count is that of every thread together, while the depth, score and line are the main thread's
+    private void sendSearchInfo(Search completedSearch, long nodeCount, long startTime) {
+        long elapsedMilliseconds = Math.max(1, (System.nanoTime() - startTime) / 1000000L);
+        int score = completedSearch.getBestScore();
+        StringBuilder info = new StringBuilder("info depth ").append(completedSearch.getCompletedDepth());
+        if (Search.isMateScore(score)) {
+            // Mate scores count plies to mate; UCI counts moves, negative when the engine is the one being mated
+            int matePlies = Search.MATE_SCORE - Math.abs(score);
+            int mateMoves = (matePlies + 1) / 2;
+            info.append(" score mate ").append((score > 0) ? mateMoves : -mateMoves);
+        } else {
+            info.append(" score cp ").append(score);
+        }
+        info.append(" nodes ").append(nodeCount)
+                .append(" nps ").append(nodeCount * 1000L / elapsedMilliseconds)
+                .append(" time ").append(elapsedMilliseconds)
+                .append(" pv");
+        for (int move : completedSearch.getPrincipalVariation()) {
+            info.append(' ').append(toUciMove(move));
+        }
+        send(info.toString());
+    }
+
+    // Lines from the search thread and the command thread must never interleave, and each is flushed straight away
+    // since the GUI is waiting on it
+    private synchronized void send(String line) {
+        output.println(line);
+        output.flush();
+    }
+
+    // Returns the legal move with the given UCI name, or Move.NO_MOVE
+    private int parseMove(String uciMove) {
+        int legalMoveCount = board.getAllPiecesLegalMoves(legalMoveBuffer);
+        for (int i = 0; i < legalMoveCount; i++) {
+            if (toUciMove(legalMoveBuffer[i]).equals(uciMove)) {
+                return legalMoveBuffer[i];
+            }
+        }
+        return Move.NO_MOVE;
+    }
+
+    static String toUciMove(int move) {
+        StringBuilder uciMove = new StringBuilder(5);
+        appendSquare(uciMove, Move.getCurrentSquare(move));
+        appendSquare(uciMove, Move.getTargetSquare(move));
+        Piece.PieceType promotionPieceType = Move.getPromotionPieceType(move);
+        if (promotionPieceType != null) {
+            uciMove.append(promotionPieceType.toString().toLowerCase());
+        }
+        return uciMove.toString();
+    }
+
+    // Board rows count down from black's side, where ranks count up from white's
+    private static void appendSquare(StringBuilder uciMove, int square) {
+        uciMove.append((char) ('a' + square % Board.MAX_COLUMNS))
+                .append((char) ('1' + Board.MAX_ROWS - 1 - square / Board.MAX_COLUMNS));
+    }
+
+    public static void main(String[] args) throws IOException {
+        BufferedReader input = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII));
+        new UciEngine(input, System.out).run();
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.Random;
+
+// Random keys that are XORed together to give each position a 64-bit identity. A position's key combines one key per
+// piece on its square, one for black to move, one for the current set of castling rights and one for the column of a
+// capturable en passant pawn. Unmoved pawns, rooks and kings share the keys of their moved counterparts, since whether
+// they have moved only matters through the castling rights.
+final class Zobrist {
+    private static final Piece.Color[] COLORS = Piece.Color.values();
+    private static final Piece.PieceType[] PIECE_TYPES = Piece.PieceType.values();
+    private static final int SQUARE_COUNT = Board.MAX_ROWS * Board.MAX_COLUMNS;
+    private static final int CASTLING_RIGHTS_COMBINATIONS = 16;
+
+    private static final long[][] PIECE_SQUARE_KEYS = new long[COLORS.length * PIECE_TYPES.length][];
+    private static final long[] CASTLING_RIGHTS_KEYS = new long[CASTLING_RIGHTS_COMBINATIONS];
+    private static final long[] EN_PASSANT_COLUMN_KEYS = new long[Board.MAX_COLUMNS];
+    private static final long BLACK_TO_MOVE_KEY;
+
+    static {
+        // A fixed seed keeps keys, and so stored hashes, identical on every run
+        Random random = new Random(0x5EEDC4E55L);
+        for (Piece.Color color : COLORS) {
+            for (Piece.PieceType pieceType : PIECE_TYPES) {
+                if (pieceType == getHashedPieceType(pieceType)) {
+                    long[] squareKeys = new long[SQUARE_COUNT];
+                    for (int square = 0; square < SQUARE_COUNT; square++) {
+                        squareKeys[square] = random.nextLong();
+                    }
+                    PIECE_SQUARE_KEYS[getPieceIndex(color, pieceType)] = squareKeys;
+                }
+            }
+            for (Piece.PieceType pieceType : PIECE_TYPES) {
+                PIECE_SQUARE_KEYS[getPieceIndex(color, pieceType)] =
+                        PIECE_SQUARE_KEYS[getPieceIndex(color, getHashedPieceType(pieceType))];
+            }
+        }
+        for (int i = 0; i < CASTLING_RIGHTS_COMBINATIONS; i++) {
+            CASTLING_RIGHTS_KEYS[i] = random.nextLong();
+        }
+        CASTLING_RIGHTS_KEYS[0] = 0L;
+        for (int i = 0; i < Board.MAX_COLUMNS; i++) {
+            EN_PASSANT_COLUMN_KEYS[i] = random.nextLong();
+        }
+        BLACK_TO_MOVE_KEY = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    private static int getPieceIndex(Piece.Color color, Piece.PieceType pieceType) {
+        return color.ordinal() * PIECE_TYPES.length + pieceType.ordinal();
+    }
+
+    private static Piece.PieceType getHashedPieceType(Piece.PieceType pieceType) {
+        switch (pieceType) {
+            case PAWN_UNMOVED:
+                return Piece.PieceType.PAWN;
+            case ROOK_UNMOVED:
+                return Piece.PieceType.ROOK;
+            case KING_UNMOVED:
+                return Piece.PieceType.KING;
+            default:
+                return pieceType;
+        }
+    }
+
+    static long getPieceKey(Piece.Color color, Piece.PieceType pieceType, int square) {
+        return PIECE_SQUARE_KEYS[getPieceIndex(color, pieceType)][square];
+    }
+
+    static long getCastlingRightsKey(int castlingRights) {
+        return CASTLING_RIGHTS_KEYS[castlingRights];
+    }
+
+    static long getEnPassantKey(int enPassantTargetSquare) {
+        return EN_PASSANT_COLUMN_KEYS[enPassantTargetSquare % Board.MAX_COLUMNS];
+    }
+
+    static long getBlackToMoveKey() {
+        return BLACK_TO_MOVE_KEY;
+    }
+}